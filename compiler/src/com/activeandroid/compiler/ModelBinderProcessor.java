@@ -0,0 +1,519 @@
+package com.activeandroid.compiler;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a <code>&lt;Model&gt;$$ModelBinder</code> for every <code>@Table</code> model so that
+ * saving and loading don't have to go through reflection.
+ * <p>
+ * Models whose columns can't be accessed from generated code in the same package (private
+ * fields, final fields, private nested types) are skipped and keep using the reflective path.
+ */
+public final class ModelBinderProcessor extends AbstractProcessor {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final String MODEL = "com.activeandroid.Model";
+	private static final String MODEL_BINDER = "com.activeandroid.ModelBinder";
+	private static final String TABLE = "com.activeandroid.annotation.Table";
+	private static final String COLUMN = "com.activeandroid.annotation.Column";
+	private static final String SUFFIX = "$$ModelBinder";
+
+	private static final String CONTENT_VALUES = "android.content.ContentValues";
+	private static final String CURSOR = "android.database.Cursor";
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// ENUMERATIONS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private enum Kind {
+		BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, BOOLEAN, CHAR,
+		BYTE_OBJECT, SHORT_OBJECT, INTEGER_OBJECT, LONG_OBJECT, FLOAT_OBJECT, DOUBLE_OBJECT,
+		BOOLEAN_OBJECT, CHARACTER_OBJECT, STRING, BLOB, ENUM, MODEL, OTHER
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private Elements mElements;
+	private Types mTypes;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		mElements = processingEnv.getElementUtils();
+		mTypes = processingEnv.getTypeUtils();
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(TABLE);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		final TypeElement tableAnnotation = mElements.getTypeElement(TABLE);
+		final TypeElement model = mElements.getTypeElement(MODEL);
+		if (tableAnnotation == null || model == null) {
+			return false;
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(tableAnnotation)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+
+			final TypeElement type = (TypeElement) element;
+			if (type.getModifiers().contains(Modifier.ABSTRACT)
+					|| !mTypes.isSubtype(mTypes.erasure(type.asType()), model.asType())) {
+				continue;
+			}
+
+			if (!isAccessible(type)) {
+				note(type, "the model is not accessible from generated code");
+				continue;
+			}
+
+			final List<ColumnField> columns = getColumnFields(type, model);
+			if (columns == null) {
+				continue;
+			}
+
+			try {
+				writeBinder(type, columns, model);
+			}
+			catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Couldn't write ModelBinder: " + e.getMessage(), type);
+			}
+		}
+
+		return false;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Columns are listed in the same order TableInfo uses: superclass columns first, and the
+	// columns of each class sorted by field name.
+	private List<ColumnField> getColumnFields(TypeElement type, TypeElement model) {
+		final LinkedList<TypeElement> hierarchy = new LinkedList<TypeElement>();
+		TypeElement current = type;
+		while (current != null && !current.getQualifiedName().contentEquals(MODEL)) {
+			hierarchy.addFirst(current);
+			final TypeMirror superclass = current.getSuperclass();
+			current = superclass.getKind() == TypeKind.DECLARED
+					? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+		}
+
+		final String packageName = getPackageName(type);
+		final List<ColumnField> columns = new ArrayList<ColumnField>();
+		final Set<String> columnNames = new HashSet<String>();
+
+		for (TypeElement declaringType : hierarchy) {
+			final List<VariableElement> fields = new ArrayList<VariableElement>();
+			for (VariableElement field : ElementFilter.fieldsIn(declaringType.getEnclosedElements())) {
+				if (getColumnAnnotation(field) != null) {
+					fields.add(field);
+				}
+			}
+
+			Collections.sort(fields, new Comparator<VariableElement>() {
+				@Override
+				public int compare(VariableElement field1, VariableElement field2) {
+					return field1.getSimpleName().toString().compareTo(field2.getSimpleName().toString());
+				}
+			});
+
+			for (VariableElement field : fields) {
+				final Set<Modifier> modifiers = field.getModifiers();
+				if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)
+						|| modifiers.contains(Modifier.FINAL)
+						|| (!modifiers.contains(Modifier.PUBLIC) && !getPackageName(declaringType).equals(packageName))
+						|| !isAccessible(field.asType())) {
+					note(type, "column " + field.getSimpleName() + " is not accessible from generated code");
+					return null;
+				}
+
+				final Kind kind = getKind(field.asType(), model);
+				final String columnName = getColumnName(field);
+				if (!columnNames.add(columnName)) {
+					note(type, "column " + columnName + " is declared more than once");
+					return null;
+				}
+
+				columns.add(new ColumnField(field.getSimpleName().toString(), columnName, field.asType(), kind));
+			}
+		}
+
+		return columns;
+	}
+
+	private Kind getKind(TypeMirror type, TypeElement model) {
+		switch (type.getKind()) {
+		case BYTE:
+			return Kind.BYTE;
+		case SHORT:
+			return Kind.SHORT;
+		case INT:
+			return Kind.INT;
+		case LONG:
+			return Kind.LONG;
+		case FLOAT:
+			return Kind.FLOAT;
+		case DOUBLE:
+			return Kind.DOUBLE;
+		case BOOLEAN:
+			return Kind.BOOLEAN;
+		case CHAR:
+			return Kind.CHAR;
+		case ARRAY:
+			return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? Kind.BLOB : Kind.OTHER;
+		case DECLARED:
+			final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+			final String name = element.getQualifiedName().toString();
+			if (name.equals("java.lang.Byte")) {
+				return Kind.BYTE_OBJECT;
+			}
+			else if (name.equals("java.lang.Short")) {
+				return Kind.SHORT_OBJECT;
+			}
+			else if (name.equals("java.lang.Integer")) {
+				return Kind.INTEGER_OBJECT;
+			}
+			else if (name.equals("java.lang.Long")) {
+				return Kind.LONG_OBJECT;
+			}
+			else if (name.equals("java.lang.Float")) {
+				return Kind.FLOAT_OBJECT;
+			}
+			else if (name.equals("java.lang.Double")) {
+				return Kind.DOUBLE_OBJECT;
+			}
+			else if (name.equals("java.lang.Boolean")) {
+				return Kind.BOOLEAN_OBJECT;
+			}
+			else if (name.equals("java.lang.Character")) {
+				return Kind.CHARACTER_OBJECT;
+			}
+			else if (name.equals("java.lang.String")) {
+				return Kind.STRING;
+			}
+			else if (element.getKind() == ElementKind.ENUM) {
+				return Kind.ENUM;
+			}
+			else if (!element.getModifiers().contains(Modifier.ABSTRACT)
+					&& mTypes.isSubtype(mTypes.erasure(type), model.asType())) {
+				return Kind.MODEL;
+			}
+			return Kind.OTHER;
+		default:
+			return Kind.OTHER;
+		}
+	}
+
+	private void writeBinder(TypeElement type, List<ColumnField> columns, TypeElement model) throws IOException {
+		final String packageName = getPackageName(type);
+		final String binaryName = mElements.getBinaryName(type).toString();
+		final String binderName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + SUFFIX;
+		final String modelName = mTypes.erasure(type.asType()).toString();
+
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				packageName.isEmpty() ? binderName : packageName + "." + binderName, type);
+		final Writer writer = file.openWriter();
+		try {
+			final StringBuilder source = new StringBuilder();
+			source.append("// Generated code from ActiveAndroid. Do not modify!\n");
+			if (!packageName.isEmpty()) {
+				source.append("package ").append(packageName).append(";\n\n");
+			}
+
+			source.append("@SuppressWarnings(\"unchecked\")\n");
+			source.append("public final class ").append(binderName)
+					.append(" extends ").append(MODEL_BINDER).append("<").append(modelName).append("> {\n");
+
+			// Column names
+			source.append("\tprivate static final String[] COLUMN_NAMES = {");
+			for (int i = 0; i < columns.size(); i++) {
+				source.append(i == 0 ? " " : ", ").append(literal(columns.get(i).columnName));
+			}
+			source.append(" };\n\n");
+
+			source.append("\t@Override\n");
+			source.append("\tpublic String[] getColumnNames() {\n");
+			source.append("\t\treturn COLUMN_NAMES.clone();\n");
+			source.append("\t}\n\n");
+
+			// Bind values
+			source.append("\t@Override\n");
+			source.append("\tpublic void bindValues(").append(modelName).append(" model, ")
+					.append(CONTENT_VALUES).append(" values) {\n");
+			for (int i = 0; i < columns.size(); i++) {
+				appendBindValue(source, columns.get(i), i + 1);
+			}
+			source.append("\t}\n\n");
+
+			// Load values
+			source.append("\t@Override\n");
+			source.append("\tpublic void loadValues(").append(modelName).append(" model, ")
+					.append(CURSOR).append(" cursor, int[] columnIndexes) {\n");
+			source.append("\t\tint index;\n");
+			for (int i = 0; i < columns.size(); i++) {
+				appendLoadValue(source, columns.get(i), i + 1);
+			}
+			source.append("\t}\n");
+
+			source.append("}\n");
+			writer.write(source.toString());
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private void appendBindValue(StringBuilder source, ColumnField column, int position) {
+		final String name = literal(column.columnName);
+		final String field = "model." + column.fieldName;
+
+		source.append("\t\t");
+		switch (column.kind) {
+		case CHAR:
+			source.append("values.put(").append(name).append(", String.valueOf(").append(field).append("));\n");
+			break;
+		case CHARACTER_OBJECT:
+		case ENUM:
+			source.append("values.put(").append(name).append(", ").append(field).append(" == null ? null : ")
+					.append(field).append(column.kind == Kind.ENUM ? ".name()" : ".toString()").append(");\n");
+			break;
+		case MODEL:
+			source.append("values.put(").append(name).append(", ").append(field).append(" == null ? null : ")
+					.append(field).append(".getId());\n");
+			break;
+		case OTHER:
+			source.append("putValue(values, ").append(position).append(", ").append(field).append(");\n");
+			break;
+		default:
+			source.append("values.put(").append(name).append(", ").append(field).append(");\n");
+			break;
+		}
+	}
+
+	private void appendLoadValue(StringBuilder source, ColumnField column, int position) {
+		final String field = "model." + column.fieldName;
+
+		source.append("\t\tindex = columnIndexes[").append(position).append("];\n");
+		source.append("\t\tif (index >= 0 && !cursor.isNull(index)) {\n");
+		source.append("\t\t\t").append(field).append(" = ");
+		switch (column.kind) {
+		case BYTE:
+			source.append("(byte) cursor.getInt(index)");
+			break;
+		case BYTE_OBJECT:
+			source.append("Byte.valueOf((byte) cursor.getInt(index))");
+			break;
+		case SHORT:
+			source.append("cursor.getShort(index)");
+			break;
+		case SHORT_OBJECT:
+			source.append("Short.valueOf(cursor.getShort(index))");
+			break;
+		case INT:
+		case INTEGER_OBJECT:
+			source.append("cursor.getInt(index)");
+			break;
+		case LONG:
+		case LONG_OBJECT:
+			source.append("cursor.getLong(index)");
+			break;
+		case FLOAT:
+		case FLOAT_OBJECT:
+			source.append("cursor.getFloat(index)");
+			break;
+		case DOUBLE:
+		case DOUBLE_OBJECT:
+			source.append("cursor.getDouble(index)");
+			break;
+		case BOOLEAN:
+		case BOOLEAN_OBJECT:
+			source.append("cursor.getInt(index) != 0");
+			break;
+		case CHAR:
+		case CHARACTER_OBJECT:
+			source.append("cursor.getString(index).charAt(0)");
+			break;
+		case STRING:
+			source.append("cursor.getString(index)");
+			break;
+		case BLOB:
+			source.append("cursor.getBlob(index)");
+			break;
+		case ENUM:
+			source.append(erasure(column.type)).append(".valueOf(cursor.getString(index))");
+			break;
+		case MODEL:
+			source.append("loadEntity(").append(erasure(column.type)).append(".class, cursor.getLong(index))");
+			break;
+		default:
+			source.append("(").append(erasure(column.type)).append(") readValue(cursor, index, ")
+					.append(position).append(")");
+			break;
+		}
+		source.append(";\n");
+		source.append("\t\t}\n");
+	}
+
+	// Element helpers
+
+	private AnnotationMirror getColumnAnnotation(Element element) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+			if (annotationType.getQualifiedName().contentEquals(COLUMN)) {
+				return annotation;
+			}
+		}
+
+		return null;
+	}
+
+	private String getColumnName(VariableElement field) {
+		final AnnotationMirror column = getColumnAnnotation(field);
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : column.getElementValues().entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals("name")) {
+				final String name = (String) entry.getValue().getValue();
+				if (name.length() > 0) {
+					return name;
+				}
+			}
+		}
+
+		return field.getSimpleName().toString();
+	}
+
+	private String getPackageName(Element element) {
+		final PackageElement packageElement = mElements.getPackageOf(element);
+		return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+	}
+
+	// A type is accessible if neither it nor any type it is nested in is private, and it can be
+	// named without an instance of an outer class.
+	private boolean isAccessible(Element element) {
+		while (element != null && element.getKind() != ElementKind.PACKAGE) {
+			final Set<Modifier> modifiers = element.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE)) {
+				return false;
+			}
+
+			final Element enclosing = element.getEnclosingElement();
+			if (enclosing != null && enclosing.getKind() != ElementKind.PACKAGE
+					&& !modifiers.contains(Modifier.STATIC) && element.getKind() == ElementKind.CLASS) {
+				return false;
+			}
+
+			element = enclosing;
+		}
+
+		return true;
+	}
+
+	private boolean isAccessible(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY) {
+			return isAccessible(((ArrayType) type).getComponentType());
+		}
+		if (type.getKind() == TypeKind.DECLARED) {
+			return isAccessible(((DeclaredType) type).asElement());
+		}
+
+		return type.getKind().isPrimitive();
+	}
+
+	private String erasure(TypeMirror type) {
+		return mTypes.erasure(type).toString();
+	}
+
+	private static String literal(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private void note(Element element, String reason) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+				"No ModelBinder generated for " + element + ": " + reason + ".", element);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final class ColumnField {
+		final String fieldName;
+		final String columnName;
+		final TypeMirror type;
+		final Kind kind;
+
+		ColumnField(String fieldName, String columnName, TypeMirror type, Kind kind) {
+			this.fieldName = fieldName;
+			this.columnName = columnName;
+			this.type = type;
+			this.kind = kind;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package com.activeandroid.compiler;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a <code>com.activeandroid.ModelRegistry</code>, which lists every model and type
+ * serializer in the compilation so that they don't have to be found by scanning the APK.
+ * <p>
+ * Library modules and the app each get their own registry, named after a hash of what it lists so
+ * that the dex merge doesn't see the same class twice. Each is declared in
+ * <code>META-INF/services</code>, where the runtime finds them all.
+ * <p>
+ * The registry is written once no new models or serializers turn up in a round, which lets the
+ * binders generated in the first round go through processing normally.
+ */
+public final class ModelRegistryProcessor extends AbstractProcessor {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final String MODEL = "com.activeandroid.Model";
+	private static final String TYPE_SERIALIZER = "com.activeandroid.serializer.TypeSerializer";
+	private static final String MODEL_REGISTRY = "com.activeandroid.ModelRegistry";
+	private static final String PACKAGE = "com.activeandroid";
+	private static final String CLASS_NAME_PREFIX = "ModelRegistry$$";
+	private static final String SERVICE_FILE = "META-INF/services/" + MODEL_REGISTRY;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private Elements mElements;
+	private Types mTypes;
+
+	// Sorted so the generated source doesn't change between builds.
+	private final Set<TypeElement> mModels = new TreeSet<TypeElement>(new BinaryNameComparator());
+	private final Set<TypeElement> mTypeSerializers = new TreeSet<TypeElement>(new BinaryNameComparator());
+	private boolean mWritten;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		mElements = processingEnv.getElementUtils();
+		mTypes = processingEnv.getTypeUtils();
+	}
+
+	// Serializers aren't annotated, so every round has to be seen.
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton("*");
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		final TypeElement model = mElements.getTypeElement(MODEL);
+		final TypeElement typeSerializer = mElements.getTypeElement(TYPE_SERIALIZER);
+		if (model == null || typeSerializer == null || mElements.getTypeElement(MODEL_REGISTRY) == null) {
+			return false;
+		}
+
+		boolean found = false;
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			found |= collect(type, model, typeSerializer);
+		}
+
+		if (found && mWritten) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+					"Models or serializers generated after the ModelRegistry was written are missing from it.");
+		}
+
+		if (!mWritten && (mModels.size() > 0 || mTypeSerializers.size() > 0)
+				&& (!found || roundEnv.processingOver())) {
+			try {
+				writeRegistry();
+			}
+			catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Couldn't write ModelRegistry: " + e.getMessage());
+			}
+			mWritten = true;
+		}
+
+		return false;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private boolean collect(TypeElement type, TypeElement model, TypeElement typeSerializer) {
+		boolean found = false;
+
+		if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+			if (isSubtype(type, model)) {
+				found = mModels.add(type);
+			}
+			else if (isSubtype(type, typeSerializer)) {
+				found = mTypeSerializers.add(type);
+			}
+		}
+
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			found |= collect(nested, model, typeSerializer);
+		}
+
+		return found;
+	}
+
+	private boolean isSubtype(TypeElement type, TypeElement superType) {
+		return mTypes.isSubtype(mTypes.erasure(type.asType()), mTypes.erasure(superType.asType()));
+	}
+
+	private void writeRegistry() throws IOException {
+		final List<TypeElement> originatingElements = new ArrayList<TypeElement>(mModels);
+		originatingElements.addAll(mTypeSerializers);
+		final Element[] originating = originatingElements.toArray(new Element[originatingElements.size()]);
+
+		final String className = getClassName(originatingElements);
+		writeSource(className, originating);
+
+		final FileObject serviceFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT,
+				"", SERVICE_FILE, originating);
+		final Writer writer = serviceFile.openWriter();
+		try {
+			writer.write(PACKAGE + "." + className + "\n");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	// Stays the same between builds of a module, and differs between modules with different models.
+	private String getClassName(List<TypeElement> elements) {
+		long hash = FNV_OFFSET_BASIS;
+		for (TypeElement element : elements) {
+			final String name = mElements.getBinaryName(element).toString();
+			for (int i = 0; i < name.length(); i++) {
+				hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+			}
+			hash = (hash ^ ';') * FNV_PRIME;
+		}
+
+		return CLASS_NAME_PREFIX + Long.toHexString(hash);
+	}
+
+	private void writeSource(String className, Element[] originating) throws IOException {
+		final JavaFileObject file = processingEnv.getFiler().createSourceFile(PACKAGE + "." + className, originating);
+		final Writer writer = file.openWriter();
+		try {
+			final StringBuilder source = new StringBuilder();
+			source.append("// Generated code from ActiveAndroid. Do not modify!\n");
+			source.append("package ").append(PACKAGE).append(";\n\n");
+
+			source.append("public final class ").append(className).append(" extends ").append(MODEL_REGISTRY)
+					.append(" {\n");
+
+			appendList(source, "getModelClasses", MODEL, mModels);
+			source.append("\n");
+			appendList(source, "getTypeSerializers", TYPE_SERIALIZER, mTypeSerializers);
+
+			source.append("}\n");
+			writer.write(source.toString());
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private void appendList(StringBuilder source, String method, String type, Set<TypeElement> elements) {
+		final String listType = "java.util.List<Class<? extends " + type + ">>";
+
+		source.append("\t@Override\n");
+		source.append("\tpublic ").append(listType).append(" ").append(method).append("() {\n");
+		source.append("\t\tfinal ").append(listType).append(" classes = new java.util.ArrayList<Class<? extends ")
+				.append(type).append(">>(").append(elements.size()).append(");\n");
+
+		for (TypeElement element : elements) {
+			source.append("\t\tclasses.add(");
+			if (isPublic(element)) {
+				source.append(mTypes.erasure(element.asType()).toString()).append(".class");
+			}
+			else {
+				source.append("this.<").append(type).append(">loadClass(\"")
+						.append(mElements.getBinaryName(element)).append("\")");
+			}
+			source.append(");\n");
+		}
+
+		source.append("\t\treturn classes;\n");
+		source.append("\t}\n");
+	}
+
+	// The registry lives in its own package, so only public types can be named directly.
+	private boolean isPublic(Element element) {
+		if (mElements.getPackageOf(element).isUnnamed()) {
+			return false;
+		}
+
+		while (element != null && element.getKind() != ElementKind.PACKAGE) {
+			if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+				return false;
+			}
+			element = element.getEnclosingElement();
+		}
+
+		return true;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final class BinaryNameComparator implements Comparator<TypeElement> {
+		@Override
+		public int compare(TypeElement type1, TypeElement type2) {
+			return mElements.getBinaryName(type1).toString().compareTo(mElements.getBinaryName(type2).toString());
+		}
+	}
+}
@@ -21,6 +21,10 @@ import android.database.sqlite.SQLiteDatabase;
 
 import com.activeandroid.util.Log;
 
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 public final class ActiveAndroid {
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PUBLIC METHODS
@@ -44,6 +48,32 @@ public final class ActiveAndroid {
 		Cache.initialize(configuration);
 	}
 
+	/**
+	 * Initializes on a background thread, so that loading the models, copying the attached
+	 * database and opening it, which runs any migrations, stay off the main thread.
+	 * <p>
+	 * The database can be used right away: {@link #getDatabase()} and the model lookups block
+	 * until initialization has finished, and rethrow its failure.
+	 *
+	 * @return A future that completes once the database is open.
+	 */
+	public static Future<Void> initializeAsync(Context context) {
+		return initializeAsync(new Configuration.Builder(context).create());
+	}
+
+	public static Future<Void> initializeAsync(Configuration configuration) {
+		return initializeAsync(configuration, false);
+	}
+
+	public static Future<Void> initializeAsync(Context context, boolean loggingEnabled) {
+		return initializeAsync(new Configuration.Builder(context).create(), loggingEnabled);
+	}
+
+	public static Future<Void> initializeAsync(Configuration configuration, boolean loggingEnabled) {
+		setLoggingEnabled(loggingEnabled);
+		return Cache.initializeAsync(configuration);
+	}
+
 	public static void clearCache() {
 		Cache.clear();
 	}
@@ -60,22 +90,68 @@ public final class ActiveAndroid {
 		return Cache.openDatabase();
 	}
 
+	/**
+	 * Begins a transaction on the current thread. Observers are notified once per changed table
+	 * when the outermost transaction ends successfully, and not at all if it's rolled back.
+	 */
 	public static void beginTransaction() {
 		Cache.openDatabase().beginTransaction();
+		ChangeNotifier.beginTransaction();
 	}
 
 	public static void endTransaction() {
-		Cache.openDatabase().endTransaction();
+		boolean committed = false;
+		try {
+			Cache.openDatabase().endTransaction();
+			committed = true;
+		}
+		finally {
+			ChangeNotifier.endTransaction(committed);
+		}
 	}
 
 	public static void setTransactionSuccessful() {
 		Cache.openDatabase().setTransactionSuccessful();
+		ChangeNotifier.setTransactionSuccessful();
 	}
 
 	public static boolean inTransaction() {
 		return Cache.openDatabase().inTransaction();
 	}
 
+	/**
+	 * Runs <code>block</code> in a transaction and returns its result. The transaction is
+	 * committed if the block returns and rolled back if it throws; checked exceptions are
+	 * rethrown wrapped in a RuntimeException.
+	 * <p>
+	 * Called inside another transaction, the block runs in a savepoint instead, so throwing only
+	 * undoes its own changes and the outer transaction can carry on.
+	 */
+	public static <T> T runInTransaction(Callable<T> block) {
+		return TransactionRunner.run(block, 0);
+	}
+
+	/**
+	 * Like {@link #runInTransaction(Callable)}, but if the database is locked by another
+	 * connection the whole transaction is rolled back and run again, up to
+	 * <code>maxRetries</code> times with a growing delay. The block should create the models it
+	 * inserts, since models saved by a rolled back attempt keep their ids.
+	 */
+	public static <T> T runInTransaction(Callable<T> block, int maxRetries) {
+		return TransactionRunner.run(block, maxRetries);
+	}
+
+	/**
+	 * Saves all models in a single transaction. Models without an id are inserted, the others are
+	 * updated, using one compiled statement per model type. Observers are notified once per table
+	 * after the transaction ends.
+	 * <p>
+	 * Unlike {@link Model#save()}, a constraint violation throws and nothing is saved.
+	 */
+	public static void saveAll(Collection<? extends Model> models) {
+		Model.saveAll(models);
+	}
+
 	public static void execSQL(String sql) {
 		Cache.openDatabase().execSQL(sql);
 	}
@@ -83,4 +159,42 @@ public final class ActiveAndroid {
 	public static void execSQL(String sql, Object[] bindArgs) {
 		Cache.openDatabase().execSQL(sql, bindArgs);
 	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Told about every transaction run with {@link ActiveAndroid#runInTransaction(Callable)},
+	 * after it ends. Nested blocks are part of the outer transaction and aren't reported.
+	 * @see Configuration.Builder#setTransactionListener(TransactionListener)
+	 */
+	public interface TransactionListener {
+		/**
+		 * @param elapsedNanos Time from the first attempt to the end, including retry delays.
+		 * @param attempts The number of times the block was run.
+		 * @param committed False if the transaction was rolled back.
+		 */
+		void onTransactionFinished(long elapsedNanos, int attempts, boolean committed);
+	}
+
+	/**
+	 * The steps of initialization, in the order they run.
+	 */
+	public enum InitializationPhase {
+		/** Finding the models and serializers. */
+		LOAD_MODELS,
+		/** Copying the database attached to the assets, if it doesn't exist yet. */
+		COPY_DATABASE,
+		/** Opening the database, including creating or migrating it. */
+		OPEN_DATABASE
+	}
+
+	/**
+	 * Told how long each phase of initialization took, on the thread that initializes.
+	 * @see Configuration.Builder#setInitializationListener(InitializationListener)
+	 */
+	public interface InitializationListener {
+		void onPhaseFinished(InitializationPhase phase, long elapsedNanos);
+	}
 }
@@ -17,13 +17,21 @@ package com.activeandroid;
  */
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
-import android.support.v4.util.LruCache;
 
+import com.activeandroid.annotation.Table;
 import com.activeandroid.serializer.TypeSerializer;
 import com.activeandroid.util.Log;
+import com.activeandroid.util.StatementCache;
 
 public final class Cache {
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -36,14 +44,26 @@ public final class Cache {
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
 
-	private static Context sContext;
+	// Written while holding the class lock, read without it.
+	private static volatile Context sContext;
 
-	private static ModelInfo sModelInfo;
+	private static volatile ModelInfo sModelInfo;
 	private static DatabaseHelper sDatabaseHelper;
 
-	private static LruCache<String, Model> sEntities;
+	private static volatile EntityCache sEntities;
+	private static StatementCache sStatements;
+	private static volatile ActiveAndroid.TransactionListener sTransactionListener;
+	private static volatile WriteQueue sWriteQueue;
+	private static volatile SQLiteDatabase sDatabase;
 
-	private static boolean sIsInitialized = false;
+	private static volatile boolean sIsInitialized = false;
+
+	// Set while initializing in the background, so early callers can wait for it.
+	private static volatile FutureTask<Void> sInitialization;
+	private static volatile Thread sInitializationThread;
+
+	// Bumped by dispose, so that an initialization started before it knows not to run.
+	private static int sGeneration;
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -62,32 +82,102 @@ public final class Cache {
 			return;
 		}
 
+		final ActiveAndroid.InitializationListener listener = configuration.getInitializationListener();
+
 		sContext = configuration.getContext();
+		long start = System.nanoTime();
 		sModelInfo = new ModelInfo(configuration);
+		start = reportPhase(listener, ActiveAndroid.InitializationPhase.LOAD_MODELS, start);
+
+		// The helper copies the attached database when it's created.
 		sDatabaseHelper = new DatabaseHelper(configuration);
+		start = reportPhase(listener, ActiveAndroid.InitializationPhase.COPY_DATABASE, start);
 
-		// TODO: It would be nice to override sizeOf here and calculate the memory
-		// actually used, however at this point it seems like the reflection
-		// required would be too costly to be of any benefit. We'll just set a max
-		// object size instead.
-		sEntities = new LruCache<String, Model>(configuration.getCacheSize());
+		sEntities = createEntityCache(configuration);
+		sStatements = new StatementCache(configuration.getStatementCacheSize());
+		sTransactionListener = configuration.getTransactionListener();
+		sWriteQueue = configuration.isWriteQueueEnabled() ? new WriteQueue() : null;
 
 		openDatabase();
+		reportPhase(listener, ActiveAndroid.InitializationPhase.OPEN_DATABASE, start);
+		sModelInfo.saveSchemaCache();
 
 		sIsInitialized = true;
 
 		Log.v("ActiveAndroid initialized successfully.");
 	}
 
+	/**
+	 * Initializes on a new thread, unless initialization has already started.
+	 * @see ActiveAndroid#initializeAsync(Configuration)
+	 */
+	public static synchronized Future<Void> initializeAsync(final Configuration configuration) {
+		if (sInitialization != null && !sInitialization.isDone()) {
+			return sInitialization;
+		}
+
+		if (sIsInitialized) {
+			Log.v("ActiveAndroid already initialized.");
+
+			// Nothing to wait for, so hand back a future that's already done.
+			final FutureTask<Void> done = new FutureTask<Void>(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}, null);
+			done.run();
+			return done;
+		}
+
+		final int generation = sGeneration;
+		final FutureTask<Void> initialization = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() {
+				synchronized (Cache.class) {
+					if (generation != sGeneration) {
+						Log.v("ActiveAndroid disposed before initializing.");
+						return null;
+					}
+
+					initialize(configuration);
+				}
+
+				return null;
+			}
+		});
+		final Thread thread = new Thread(initialization, "ActiveAndroid-Initialize");
+		sInitialization = initialization;
+		sInitializationThread = thread;
+		thread.start();
+
+		return initialization;
+	}
+
 	public static synchronized void clear() {
 		sEntities.evictAll();
 		Log.v("Cache cleared.");
 	}
 
 	public static synchronized void dispose() {
+		// An initialization already waiting for the lock can't be cancelled, it checks the
+		// generation once it gets the lock instead.
+		sGeneration++;
+		if (sInitialization != null) {
+			sInitialization.cancel(false);
+			sInitialization = null;
+			sInitializationThread = null;
+		}
+
+		if (sWriteQueue != null) {
+			sWriteQueue.shutdown();
+			sWriteQueue = null;
+		}
+
 		closeDatabase();
 
 		sEntities = null;
+		sStatements = null;
+		sTransactionListener = null;
 		sModelInfo = null;
 		sDatabaseHelper = null;
 
@@ -102,14 +192,42 @@ public final class Cache {
 		return sIsInitialized;
 	}
 
-	public static synchronized SQLiteDatabase openDatabase() {
-		return sDatabaseHelper.getWritableDatabase();
+	public static SQLiteDatabase openDatabase() {
+		// Every query asks for the database, so the open one is returned without taking the lock.
+		final SQLiteDatabase database = sDatabase;
+		if (database != null && database.isOpen()) {
+			return database;
+		}
+
+		awaitInitialization();
+
+		synchronized (Cache.class) {
+			sDatabase = sDatabaseHelper.getWritableDatabase();
+			return sDatabase;
+		}
 	}
 
 	public static synchronized void closeDatabase() {
+		sDatabase = null;
+		sStatements.clear();
 		sDatabaseHelper.close();
 	}
 
+	/**
+	 * @return The compiled statements kept for reuse, with their hit and miss counts.
+	 */
+	public static StatementCache getStatementCache() {
+		return sStatements;
+	}
+
+	public static ActiveAndroid.TransactionListener getTransactionListener() {
+		return sTransactionListener;
+	}
+
+	static WriteQueue getWriteQueue() {
+		return sWriteQueue;
+	}
+
 	// Context access
 
 	public static Context getContext() {
@@ -126,33 +244,157 @@ public final class Cache {
 		return getIdentifier(entity.getClass(), entity.getId());
 	}
 
-	public static synchronized void addEntity(Model entity) {
-		sEntities.put(getIdentifier(entity), entity);
+	// The entity cache is thread-safe and the model metadata doesn't change after
+	// initialization, so none of the lookups below take the class lock.
+
+	public static void addEntity(Model entity) {
+		sEntities.put(entity);
+	}
+
+	public static Model getEntity(Class<? extends Model> type, long id) {
+		return sEntities.get(type, id);
+	}
+
+	public static void removeEntity(Model entity) {
+		sEntities.remove(entity);
+	}
+
+	/**
+	 * @return The number of cached entities, or their estimated size in bytes if the cache is
+	 * sized in bytes.
+	 * @see Configuration.Builder#setCacheMaxBytes(int)
+	 */
+	public static long getEntityCacheSize() {
+		return sEntities.size();
 	}
 
-	public static synchronized Model getEntity(Class<? extends Model> type, long id) {
-		return sEntities.get(getIdentifier(type, id));
+	/**
+	 * @return The number of entities evicted to make room since initialization.
+	 */
+	public static long getEvictionCount() {
+		return sEntities.evictionCount();
 	}
 
-	public static synchronized void removeEntity(Model entity) {
-		sEntities.remove(getIdentifier(entity));
+	// Content notifications
+
+	/**
+	 * Notifies observers of a changed row, or of the whole table if <code>id</code> is null.
+	 * Inside a transaction the notification is deferred until it ends.
+	 * @see ActiveAndroid#beginTransaction()
+	 */
+	public static void notifyChange(Class<? extends Model> type, Long id) {
+		ChangeNotifier.notifyChange(type, id);
 	}
 
 	// Model cache
 
-	public static synchronized Collection<TableInfo> getTableInfos() {
-		return sModelInfo.getTableInfos();
+	public static Collection<TableInfo> getTableInfos() {
+		return getModelInfo().getTableInfos();
 	}
 
-	public static synchronized TableInfo getTableInfo(Class<? extends Model> type) {
-		return sModelInfo.getTableInfo(type);
+	public static TableInfo getTableInfo(Class<? extends Model> type) {
+		return getModelInfo().getTableInfo(type);
 	}
 
-	public static synchronized TypeSerializer getParserForType(Class<?> type) {
-		return sModelInfo.getTypeSerializer(type);
+	public static TypeSerializer getParserForType(Class<?> type) {
+		return getModelInfo().getTypeSerializer(type);
 	}
 
-	public static synchronized String getTableName(Class<? extends Model> type) {
-		return sModelInfo.getTableInfo(type).getTableName();
+	public static String getTableName(Class<? extends Model> type) {
+		return getModelInfo().getTableInfo(type).getTableName();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static ModelInfo getModelInfo() {
+		final ModelInfo modelInfo = sModelInfo;
+		if (modelInfo != null) {
+			return modelInfo;
+		}
+
+		awaitInitialization();
+		return sModelInfo;
+	}
+
+	/**
+	 * Blocks until a background initialization has finished. Does nothing if there is none, or if
+	 * called while initializing, which opens the database itself.
+	 */
+	private static void awaitInitialization() {
+		final FutureTask<Void> initialization = sInitialization;
+		if (sIsInitialized || initialization == null || Thread.currentThread() == sInitializationThread) {
+			return;
+		}
+
+		try {
+			initialization.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for ActiveAndroid to initialize.", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("ActiveAndroid failed to initialize.", e.getCause());
+		}
+		catch (CancellationException e) {
+			// Handled below.
+		}
+
+		if (!sIsInitialized) {
+			throw new IllegalStateException("ActiveAndroid was disposed while initializing.");
+		}
+	}
+
+	private static long reportPhase(ActiveAndroid.InitializationListener listener,
+			ActiveAndroid.InitializationPhase phase, long start) {
+		final long end = System.nanoTime();
+		Log.v(phase + " took " + (end - start) / 1000000 + " ms.");
+		if (listener != null) {
+			listener.onPhaseFinished(phase, end - start);
+		}
+
+		return end;
+	}
+
+	private static EntityCache createEntityCache(Configuration configuration) {
+		if (configuration.getCacheMaxBytes() <= 0) {
+			return new EntityCache(configuration.getCacheSize(), false, null,
+					configuration.getCacheEvictionListener(), configuration.getCacheReferences());
+		}
+
+		// Budgets set on the configuration override those of the annotations.
+		// Read from the annotations directly, so that the tables can still be built lazily.
+		final Map<Class<? extends Model>, Integer> budgets = new HashMap<Class<? extends Model>, Integer>();
+		for (Class<? extends Model> type : sModelInfo.getModelClasses()) {
+			final Table table = type.getAnnotation(Table.class);
+			if (table != null && table.cacheBudget() > 0) {
+				budgets.put(type, table.cacheBudget());
+			}
+		}
+		if (configuration.getCacheBudgets() != null) {
+			budgets.putAll(configuration.getCacheBudgets());
+		}
+
+		return new EntityCache(configuration.getCacheMaxBytes(), true, budgets,
+				configuration.getCacheEvictionListener(), configuration.getCacheReferences());
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reports entities evicted from the cache to make room for others.
+	 */
+	public interface EvictionListener {
+		/**
+		 * Called on the thread that added the entity which made room necessary, after the
+		 * evicted entity has been removed.
+		 *
+		 * @param size 1, or the estimated size in bytes if the cache is sized in bytes.
+		 */
+		void onEntityEvicted(Model entity, int size);
 	}
 }
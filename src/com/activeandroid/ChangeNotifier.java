@@ -0,0 +1,152 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.content.ContentProvider;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends content notifications for changed tables. Changes made inside a transaction opened with
+ * {@link ActiveAndroid#beginTransaction()} are collected per table and sent once when the
+ * outermost transaction ends successfully, or dropped if it's rolled back.
+ * <p>
+ * Transactions are bound to the thread that opened them, and so is the pending state.
+ */
+final class ChangeNotifier {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final ThreadLocal<Transaction> sTransaction = new ThreadLocal<Transaction>();
+
+	// Counted as soon as the write is made, even in a transaction that is later rolled back, so
+	// that what was read before it is never mistaken for current.
+	private static final ConcurrentHashMap<Class<? extends Model>, AtomicInteger> sWriteCounts =
+			new ConcurrentHashMap<Class<? extends Model>, AtomicInteger>();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private ChangeNotifier() {
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	static void notifyChange(Class<? extends Model> type, Long id) {
+		countWrite(type);
+
+		final Transaction transaction = sTransaction.get();
+		if (transaction != null) {
+			// Observers of a row are also notified of changes to its table.
+			transaction.mChangedTypes.add(type);
+			return;
+		}
+
+		Cache.getContext().getContentResolver().notifyChange(ContentProvider.createUri(type, id), null);
+	}
+
+	static void beginTransaction() {
+		Transaction transaction = sTransaction.get();
+		if (transaction == null) {
+			transaction = new Transaction();
+			sTransaction.set(transaction);
+		}
+
+		transaction.mDepth++;
+		transaction.mCurrentSuccessful = false;
+	}
+
+	static void setTransactionSuccessful() {
+		final Transaction transaction = sTransaction.get();
+		if (transaction != null) {
+			transaction.mCurrentSuccessful = true;
+		}
+	}
+
+	/**
+	 * @param committed False if ending the transaction in the database failed.
+	 */
+	static void endTransaction(boolean committed) {
+		final Transaction transaction = sTransaction.get();
+		if (transaction == null) {
+			return;
+		}
+
+		// Like SQLiteDatabase, a nested transaction that isn't successful rolls back the outer one.
+		if (!committed || !transaction.mCurrentSuccessful) {
+			transaction.mRolledBack = true;
+		}
+		transaction.mCurrentSuccessful = false;
+
+		if (--transaction.mDepth > 0) {
+			return;
+		}
+
+		sTransaction.remove();
+		if (transaction.mRolledBack) {
+			return;
+		}
+
+		for (Class<? extends Model> type : transaction.mChangedTypes) {
+			Cache.getContext().getContentResolver().notifyChange(ContentProvider.createUri(type, null), null);
+		}
+	}
+
+	/**
+	 * @return A number that changes whenever models of <code>type</code> are written. Read it
+	 * before querying, so that a write made during the query counts as well.
+	 */
+	static int getWriteCount(Class<? extends Model> type) {
+		final AtomicInteger count = sWriteCounts.get(type);
+		return count != null ? count.get() : 0;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static void countWrite(Class<? extends Model> type) {
+		AtomicInteger count = sWriteCounts.get(type);
+		if (count == null) {
+			final AtomicInteger created = new AtomicInteger();
+			count = sWriteCounts.putIfAbsent(type, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+
+		count.incrementAndGet();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final class Transaction {
+		private final Set<Class<? extends Model>> mChangedTypes = new LinkedHashSet<Class<? extends Model>>();
+		private int mDepth;
+		private boolean mCurrentSuccessful;
+		private boolean mRolledBack;
+	}
+}
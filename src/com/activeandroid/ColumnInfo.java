@@ -0,0 +1,518 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+import com.activeandroid.util.ReflectionUtils;
+
+/**
+ * A column of a {@link TableInfo}, resolved once when the table is built so that saving and
+ * loading rows only has to switch on {@link #getType()}.
+ */
+@SuppressWarnings("unchecked")
+public final class ColumnInfo {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// ENUMERATIONS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public enum Type {
+		BYTE, SHORT, INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, CHARACTER, STRING, BLOB, BYTE_ARRAY, MODEL, LAZY,
+		ENUM, SERIALIZED, UNKNOWN;
+
+		@SuppressWarnings("serial")
+		private static final Map<Class<?>, Type> TYPES = new HashMap<Class<?>, Type>() {
+			{
+				put(byte.class, BYTE);
+				put(short.class, SHORT);
+				put(int.class, INTEGER);
+				put(long.class, LONG);
+				put(float.class, FLOAT);
+				put(double.class, DOUBLE);
+				put(boolean.class, BOOLEAN);
+				put(char.class, CHARACTER);
+				put(byte[].class, BLOB);
+				put(Byte.class, BYTE);
+				put(Short.class, SHORT);
+				put(Integer.class, INTEGER);
+				put(Long.class, LONG);
+				put(Float.class, FLOAT);
+				put(Double.class, DOUBLE);
+				put(Boolean.class, BOOLEAN);
+				put(Character.class, CHARACTER);
+				put(String.class, STRING);
+				put(Byte[].class, BYTE_ARRAY);
+				put(Lazy.class, LAZY);
+			}
+		};
+
+		/**
+		 * @return The type used to store values of <code>type</code>, ignoring serializers.
+		 */
+		public static Type of(Class<?> type) {
+			final Type resolved = TYPES.get(type);
+			if (resolved != null) {
+				return resolved;
+			}
+			else if (ReflectionUtils.isModel(type)) {
+				return MODEL;
+			}
+			else if (ReflectionUtils.isSubclassOf(type, Enum.class)) {
+				return ENUM;
+			}
+
+			return UNKNOWN;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Kept in place of a value whose changes can't be detected.
+	private static final Object UNKNOWN_VALUE = new Object();
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Field mField;
+	private final String mName;
+	private final Type mType;
+	private final boolean mPrimitive;
+	private final Class<? extends Model> mLazyType;
+
+	private final TypeSerializer mTypeSerializer;
+	private final Class<?> mSerializedClass;
+	private final Type mSerializedType;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	ColumnInfo(Field field, String name, TypeSerializer typeSerializer) {
+		mField = field;
+		mName = name;
+		mPrimitive = field.getType().isPrimitive();
+		mTypeSerializer = typeSerializer;
+
+		if (typeSerializer != null) {
+			mType = Type.SERIALIZED;
+			mSerializedClass = typeSerializer.getSerializedType();
+			mSerializedType = Type.of(mSerializedClass);
+		}
+		else {
+			mType = Type.of(field.getType());
+			mSerializedClass = null;
+			mSerializedType = null;
+		}
+
+		mLazyType = mType == Type.LAZY ? ReflectionUtils.getLazyType(field) : null;
+		if (mType == Type.LAZY && mLazyType == null) {
+			Log.e("Lazy column " + name + " doesn't declare the model it refers to.");
+		}
+
+		field.setAccessible(true);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public Field getField() {
+		return mField;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	public TypeSerializer getTypeSerializer() {
+		return mTypeSerializer;
+	}
+
+	/**
+	 * @return The type of the stored value, which is the serialized type for serialized columns.
+	 */
+	public Type getStorageType() {
+		return mType == Type.SERIALIZED ? mSerializedType : mType;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	void bindValue(Model model, ContentValues values) throws IllegalAccessException {
+		putValue(values, mField.get(model));
+	}
+
+	/**
+	 * Reads the value of this column into a long, and for values that a long can't hold, the
+	 * value itself. Numbers and ids are kept exactly in the long. Text and enums are kept as is,
+	 * which costs nothing since they're immutable, with the length or ordinal in the long. Blobs
+	 * are kept as is too, with a 64-bit hash in the long to tell when one was edited in place.
+	 * Nothing is allocated, except what the serializer of a serialized column allocates.
+	 *
+	 * @return false if the value is null, in which case the state is 0.
+	 * @see #isSameValue(Object, Object)
+	 */
+	boolean readState(Model model, long[] states, Object[] values, int index) throws IllegalAccessException {
+		values[index] = null;
+		if (mPrimitive) {
+			switch (mType) {
+			case BYTE:
+				states[index] = mField.getByte(model);
+				return true;
+			case SHORT:
+				states[index] = mField.getShort(model);
+				return true;
+			case INTEGER:
+				states[index] = mField.getInt(model);
+				return true;
+			case LONG:
+				states[index] = mField.getLong(model);
+				return true;
+			case FLOAT:
+				states[index] = Float.floatToIntBits(mField.getFloat(model));
+				return true;
+			case DOUBLE:
+				states[index] = Double.doubleToLongBits(mField.getDouble(model));
+				return true;
+			case BOOLEAN:
+				states[index] = mField.getBoolean(model) ? 1 : 0;
+				return true;
+			case CHARACTER:
+				states[index] = mField.getChar(model);
+				return true;
+			default:
+				break;
+			}
+		}
+
+		Object value = mField.get(model);
+		Type type = mType;
+		if (value != null && type == Type.SERIALIZED) {
+			value = mTypeSerializer.serialize(value);
+			type = value != null ? Type.of(value.getClass()) : null;
+		}
+
+		if (value == null) {
+			states[index] = 0;
+			return false;
+		}
+
+		switch (type) {
+		case BYTE:
+		case SHORT:
+		case INTEGER:
+		case LONG:
+			states[index] = ((Number) value).longValue();
+			return true;
+		case FLOAT:
+			states[index] = Float.floatToIntBits((Float) value);
+			return true;
+		case DOUBLE:
+			states[index] = Double.doubleToLongBits((Double) value);
+			return true;
+		case BOOLEAN:
+			states[index] = (Boolean) value ? 1 : 0;
+			return true;
+		case CHARACTER:
+			states[index] = (Character) value;
+			return true;
+		case STRING:
+			states[index] = ((String) value).length();
+			values[index] = value;
+			return true;
+		case BLOB:
+			states[index] = hash((byte[]) value);
+			values[index] = value;
+			return true;
+		case BYTE_ARRAY:
+			states[index] = hash((Byte[]) value);
+			values[index] = value;
+			return true;
+		case MODEL:
+			return readId(((Model) value).getId(), states, index);
+		case LAZY:
+			return readId(((Lazy<?>) value).getId(), states, index);
+		case ENUM:
+			states[index] = ((Enum<?>) value).ordinal();
+			values[index] = value;
+			return true;
+		default:
+			// Nothing tells whether an unknown type changed, so it's always written.
+			states[index] = 0;
+			values[index] = UNKNOWN_VALUE;
+			return true;
+		}
+	}
+
+	/**
+	 * Compares the values kept by {@link #readState(Model, long[], Object[], int)} for two
+	 * snapshots whose states are already equal.
+	 */
+	static boolean isSameValue(Object loaded, Object current) {
+		if (loaded == UNKNOWN_VALUE || current == UNKNOWN_VALUE) {
+			return false;
+		}
+		if (loaded == current) {
+			return true;
+		}
+		if (loaded instanceof byte[] && current instanceof byte[]) {
+			return Arrays.equals((byte[]) loaded, (byte[]) current);
+		}
+		if (loaded instanceof Byte[] && current instanceof Byte[]) {
+			return Arrays.equals((Byte[]) loaded, (Byte[]) current);
+		}
+
+		return loaded != null && loaded.equals(current);
+	}
+
+	void loadValue(Model model, Cursor cursor, int columnIndex) throws IllegalAccessException {
+		if (mPrimitive && !cursor.isNull(columnIndex)) {
+			switch (mType) {
+			case BYTE:
+				mField.setByte(model, (byte) cursor.getInt(columnIndex));
+				return;
+			case SHORT:
+				mField.setShort(model, (short) cursor.getInt(columnIndex));
+				return;
+			case INTEGER:
+				mField.setInt(model, cursor.getInt(columnIndex));
+				return;
+			case LONG:
+				mField.setLong(model, cursor.getLong(columnIndex));
+				return;
+			case FLOAT:
+				mField.setFloat(model, cursor.getFloat(columnIndex));
+				return;
+			case DOUBLE:
+				mField.setDouble(model, cursor.getDouble(columnIndex));
+				return;
+			case BOOLEAN:
+				mField.setBoolean(model, cursor.getInt(columnIndex) != 0);
+				return;
+			case CHARACTER:
+				mField.setChar(model, cursor.getString(columnIndex).charAt(0));
+				return;
+			default:
+				break;
+			}
+		}
+
+		final Object value = readValue(cursor, columnIndex);
+		if (value != null) {
+			mField.set(model, value);
+		}
+	}
+
+	void putValue(ContentValues values, Object value) {
+		if (mType != Type.SERIALIZED) {
+			putValue(values, mName, value, mType);
+			return;
+		}
+
+		if (value != null) {
+			value = mTypeSerializer.serialize(value);
+		}
+
+		if (value == null) {
+			values.putNull(mName);
+			return;
+		}
+
+		Type type = mSerializedType;
+		if (!value.getClass().equals(mSerializedClass)) {
+			type = Type.of(value.getClass());
+			// check that the serializer returned what it promised
+			if (type != mSerializedType) {
+				Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
+						mSerializedClass, value.getClass()));
+			}
+		}
+
+		putValue(values, mName, value, type);
+	}
+
+	Object readValue(Cursor cursor, int columnIndex) {
+		if (mType == Type.LAZY) {
+			return readValue(cursor, columnIndex, mType, mLazyType);
+		}
+		else if (mType != Type.SERIALIZED) {
+			return readValue(cursor, columnIndex, mType, mField.getType());
+		}
+
+		if (cursor.isNull(columnIndex)) {
+			return null;
+		}
+
+		return mTypeSerializer.deserialize(readValue(cursor, columnIndex, mSerializedType, mSerializedClass));
+	}
+
+	static void putValue(ContentValues values, String name, Object value, Type type) {
+		if (value == null) {
+			values.putNull(name);
+			return;
+		}
+
+		switch (type) {
+		case BYTE:
+			values.put(name, (Byte) value);
+			break;
+		case SHORT:
+			values.put(name, (Short) value);
+			break;
+		case INTEGER:
+			values.put(name, (Integer) value);
+			break;
+		case LONG:
+			values.put(name, (Long) value);
+			break;
+		case FLOAT:
+			values.put(name, (Float) value);
+			break;
+		case DOUBLE:
+			values.put(name, (Double) value);
+			break;
+		case BOOLEAN:
+			values.put(name, (Boolean) value);
+			break;
+		case CHARACTER:
+		case STRING:
+			values.put(name, value.toString());
+			break;
+		case BLOB:
+			values.put(name, (byte[]) value);
+			break;
+		case BYTE_ARRAY:
+			final Byte[] boxed = (Byte[]) value;
+			final byte[] bytes = new byte[boxed.length];
+			for (int i = 0; i < boxed.length; i++) {
+				bytes[i] = boxed[i];
+			}
+			values.put(name, bytes);
+			break;
+		case MODEL:
+			values.put(name, ((Model) value).getId());
+			break;
+		case LAZY:
+			values.put(name, ((Lazy<?>) value).getId());
+			break;
+		case ENUM:
+			values.put(name, ((Enum<?>) value).name());
+			break;
+		default:
+			break;
+		}
+	}
+
+	static Object readValue(Cursor cursor, int columnIndex, Type type, Class<?> javaType) {
+		if (cursor.isNull(columnIndex)) {
+			return null;
+		}
+
+		switch (type) {
+		case BYTE:
+			return (byte) cursor.getInt(columnIndex);
+		case SHORT:
+			return (short) cursor.getInt(columnIndex);
+		case INTEGER:
+			return cursor.getInt(columnIndex);
+		case LONG:
+			return cursor.getLong(columnIndex);
+		case FLOAT:
+			return cursor.getFloat(columnIndex);
+		case DOUBLE:
+			return cursor.getDouble(columnIndex);
+		case BOOLEAN:
+			return cursor.getInt(columnIndex) != 0;
+		case CHARACTER:
+			return cursor.getString(columnIndex).charAt(0);
+		case STRING:
+			return cursor.getString(columnIndex);
+		case BLOB:
+			return cursor.getBlob(columnIndex);
+		case BYTE_ARRAY:
+			final byte[] bytes = cursor.getBlob(columnIndex);
+			final Byte[] boxed = new Byte[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				boxed[i] = bytes[i];
+			}
+			return boxed;
+		case MODEL:
+			return Model.loadEntity((Class<? extends Model>) javaType, cursor.getLong(columnIndex));
+		case LAZY:
+			// Only the id is read, the related model is loaded when the relation is first used.
+			return javaType != null ? newLazy(javaType.asSubclass(Model.class), cursor.getLong(columnIndex)) : null;
+		case ENUM:
+			@SuppressWarnings("rawtypes")
+			final Class<? extends Enum> enumType = (Class<? extends Enum>) javaType;
+			return Enum.valueOf(enumType, cursor.getString(columnIndex));
+		default:
+			return null;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static <T extends Model> Lazy<T> newLazy(Class<T> type, long id) {
+		return new Lazy<T>(type, id);
+	}
+
+	private static boolean readId(Long id, long[] states, int index) {
+		states[index] = id != null ? id : 0;
+		return id != null;
+	}
+
+	// FNV-1a. Only tells a blob edited in place from the one loaded, which can't be compared since
+	// it's the same array; replaced blobs are compared in full.
+	private static long hash(byte[] value) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : value) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+
+		return hash;
+	}
+
+	private static long hash(Byte[] value) {
+		long hash = FNV_OFFSET_BASIS;
+		for (Byte b : value) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+
+		return hash;
+	}
+}
@@ -18,7 +18,9 @@ package com.activeandroid;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.Context;
 
@@ -31,6 +33,18 @@ public class Configuration {
     public final static String SQL_PARSER_LEGACY = "legacy";
     public final static String SQL_PARSER_DELIMITED = "delimited";
 
+    public final static String CACHE_REFERENCES_STRONG = "strong";
+    public final static String CACHE_REFERENCES_SOFT = "soft";
+    public final static String CACHE_REFERENCES_WEAK = "weak";
+
+    public final static String SYNCHRONOUS_OFF = "OFF";
+    public final static String SYNCHRONOUS_NORMAL = "NORMAL";
+    public final static String SYNCHRONOUS_FULL = "FULL";
+
+    public final static String TEMP_STORE_DEFAULT = "DEFAULT";
+    public final static String TEMP_STORE_FILE = "FILE";
+    public final static String TEMP_STORE_MEMORY = "MEMORY";
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -42,6 +56,20 @@ public class Configuration {
 	private List<Class<? extends Model>> mModelClasses;
 	private List<Class<? extends TypeSerializer>> mTypeSerializers;
 	private int mCacheSize;
+	private int mCacheMaxBytes;
+	private Map<Class<? extends Model>, Integer> mCacheBudgets;
+	private Cache.EvictionListener mCacheEvictionListener;
+	private ActiveAndroid.TransactionListener mTransactionListener;
+	private ActiveAndroid.InitializationListener mInitializationListener;
+	private String mCacheReferences;
+	private int mStatementCacheSize;
+	private boolean mWriteAheadLoggingEnabled;
+	private String mSynchronous;
+	private Long mJournalSizeLimit;
+	private Integer mPageCacheSize;
+	private Long mMmapSize;
+	private String mTempStore;
+	private boolean mWriteQueueEnabled;
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -83,6 +111,87 @@ public class Configuration {
 		return mCacheSize;
 	}
 
+	/**
+	 * @return The most memory in bytes that cached entities may use, or 0 if the cache is sized
+	 * by {@link #getCacheSize()} instead.
+	 */
+	public int getCacheMaxBytes() {
+		return mCacheMaxBytes;
+	}
+
+	/**
+	 * @return The memory budgets set for single models, overriding {@link
+	 * com.activeandroid.annotation.Table#cacheBudget()}.
+	 */
+	public Map<Class<? extends Model>, Integer> getCacheBudgets() {
+		return mCacheBudgets;
+	}
+
+	public Cache.EvictionListener getCacheEvictionListener() {
+		return mCacheEvictionListener;
+	}
+
+	public ActiveAndroid.TransactionListener getTransactionListener() {
+		return mTransactionListener;
+	}
+
+	public ActiveAndroid.InitializationListener getInitializationListener() {
+		return mInitializationListener;
+	}
+
+	public String getCacheReferences() {
+		return mCacheReferences;
+	}
+
+	public int getStatementCacheSize() {
+		return mStatementCacheSize;
+	}
+
+	public boolean isWriteAheadLoggingEnabled() {
+		return mWriteAheadLoggingEnabled;
+	}
+
+	/**
+	 * @return The synchronous level, or null to keep the SQLite default.
+	 */
+	public String getSynchronous() {
+		return mSynchronous;
+	}
+
+	/**
+	 * @return The journal size limit in bytes, or null to keep the SQLite default.
+	 */
+	public Long getJournalSizeLimit() {
+		return mJournalSizeLimit;
+	}
+
+	/**
+	 * @return The page cache size passed to <code>PRAGMA cache_size</code>, or null to keep the
+	 * SQLite default.
+	 */
+	public Integer getPageCacheSize() {
+		return mPageCacheSize;
+	}
+
+	/**
+	 * @return The most bytes of the database to map into memory, or null to keep the SQLite
+	 * default.
+	 */
+	public Long getMmapSize() {
+		return mMmapSize;
+	}
+
+	/**
+	 * @return Where temporary tables and indices are stored, or null to keep the SQLite default.
+	 */
+	public String getTempStore() {
+		return mTempStore;
+	}
+
+	public boolean isWriteQueueEnabled() {
+		return mWriteQueueEnabled;
+	}
+
 	public boolean isValid() {
 		return mModelClasses != null && mModelClasses.size() > 0;
 	}
@@ -101,10 +210,13 @@ public class Configuration {
 		private final static String AA_MODELS = "AA_MODELS";
 		private final static String AA_SERIALIZERS = "AA_SERIALIZERS";
 		private final static String AA_SQL_PARSER = "AA_SQL_PARSER";
+		private final static String AA_CACHE_REFERENCES = "AA_CACHE_REFERENCES";
 
 		private static final int DEFAULT_CACHE_SIZE = 1024;
+		private static final int DEFAULT_STATEMENT_CACHE_SIZE = 25;
 		private static final String DEFAULT_DB_NAME = "Application.db";
 		private static final String DEFAULT_SQL_PARSER = SQL_PARSER_LEGACY;
+		private static final String DEFAULT_CACHE_REFERENCES = CACHE_REFERENCES_STRONG;
 
 		//////////////////////////////////////////////////////////////////////////////////////
 		// PRIVATE MEMBERS
@@ -113,6 +225,20 @@ public class Configuration {
 		private Context mContext;
 
 		private Integer mCacheSize;
+		private int mCacheMaxBytes;
+		private Map<Class<? extends Model>, Integer> mCacheBudgets;
+		private Cache.EvictionListener mCacheEvictionListener;
+		private ActiveAndroid.TransactionListener mTransactionListener;
+		private ActiveAndroid.InitializationListener mInitializationListener;
+		private String mCacheReferences;
+		private Integer mStatementCacheSize;
+		private boolean mWriteAheadLoggingEnabled;
+		private String mSynchronous;
+		private Long mJournalSizeLimit;
+		private Integer mPageCacheSize;
+		private Long mMmapSize;
+		private String mTempStore;
+		private boolean mWriteQueueEnabled;
 		private String mDatabaseName;
 		private Integer mDatabaseVersion;
 		private String mSqlParser;
@@ -126,6 +252,7 @@ public class Configuration {
 		public Builder(Context context) {
 			mContext = context.getApplicationContext();
 			mCacheSize = DEFAULT_CACHE_SIZE;
+			mStatementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
 		}
 
 		//////////////////////////////////////////////////////////////////////////////////////
@@ -137,6 +264,144 @@ public class Configuration {
 			return this;
 		}
 
+		/**
+		 * Sizes the entity cache by the estimated memory of its entities instead of their number,
+		 * so that a few rows with large strings or blobs can't hold on to more than
+		 * <code>maxBytes</code>. The size set with {@link #setCacheSize(int)} is then ignored.
+		 */
+		public Builder setCacheMaxBytes(int maxBytes) {
+			mCacheMaxBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * Limits the memory that cached entities of one model may use, overriding the budget set
+		 * with {@link com.activeandroid.annotation.Table#cacheBudget()}. Only applies when the
+		 * cache is sized in bytes.
+		 */
+		public Builder setCacheBudget(Class<? extends Model> modelClass, int maxBytes) {
+			if (mCacheBudgets == null) {
+				mCacheBudgets = new HashMap<Class<? extends Model>, Integer>();
+			}
+
+			mCacheBudgets.put(modelClass, maxBytes);
+			return this;
+		}
+
+		/**
+		 * Sets a listener that is told about every entity evicted from the cache to make room.
+		 */
+		public Builder setCacheEvictionListener(Cache.EvictionListener listener) {
+			mCacheEvictionListener = listener;
+			return this;
+		}
+
+		/**
+		 * Sets a listener that is told how long every transaction run with {@link
+		 * ActiveAndroid#runInTransaction(java.util.concurrent.Callable)} took.
+		 */
+		public Builder setTransactionListener(ActiveAndroid.TransactionListener listener) {
+			mTransactionListener = listener;
+			return this;
+		}
+
+		/**
+		 * Sets a listener that is told how long each phase of initialization took.
+		 */
+		public Builder setInitializationListener(ActiveAndroid.InitializationListener listener) {
+			mInitializationListener = listener;
+			return this;
+		}
+
+		/**
+		 * Sets how the cache refers to entities. With {@link #CACHE_REFERENCES_STRONG} entities
+		 * are kept until they are evicted to make room. With {@link #CACHE_REFERENCES_WEAK} or
+		 * {@link #CACHE_REFERENCES_SOFT} they are kept only while the app refers to them, or
+		 * until memory runs low, and the size and budgets of the cache don't apply. Loading a row
+		 * still returns the instance the app holds for it.
+		 */
+		public Builder setCacheReferences(String cacheReferences) {
+			mCacheReferences = cacheReferences;
+			return this;
+		}
+
+		/**
+		 * Sets how many compiled statements are kept for reuse by counts, exists checks, updates
+		 * and deletes.
+		 */
+		public Builder setStatementCacheSize(int statementCacheSize) {
+			mStatementCacheSize = statementCacheSize;
+			return this;
+		}
+
+		/**
+		 * Opens the database in write-ahead logging mode, so that reads on other threads aren't
+		 * blocked by a long write. Requires API 11, older releases keep the rollback journal.
+		 */
+		public Builder setWriteAheadLoggingEnabled(boolean enabled) {
+			mWriteAheadLoggingEnabled = enabled;
+			return this;
+		}
+
+		/**
+		 * Sets how often SQLite syncs to disk, one of {@link #SYNCHRONOUS_OFF}, {@link
+		 * #SYNCHRONOUS_NORMAL} or {@link #SYNCHRONOUS_FULL}. <code>NORMAL</code> is safe in
+		 * write-ahead logging mode and syncs far less than <code>FULL</code>. Between API 16 and
+		 * 29 the platform keeps its own level in write-ahead logging mode.
+		 */
+		public Builder setSynchronous(String synchronous) {
+			mSynchronous = synchronous;
+			return this;
+		}
+
+		/**
+		 * Limits the size in bytes of the journal, or the write-ahead log, that is left on disk
+		 * after a transaction.
+		 */
+		public Builder setJournalSizeLimit(long bytes) {
+			mJournalSizeLimit = bytes;
+			return this;
+		}
+
+		/**
+		 * Sets <code>PRAGMA cache_size</code> for the database connection. Positive values are a
+		 * number of pages, negative values a size in kibibytes.
+		 */
+		public Builder setPageCacheSize(int pageCacheSize) {
+			mPageCacheSize = pageCacheSize;
+			return this;
+		}
+
+		/**
+		 * Maps up to <code>bytes</code> of the database into memory for reads. Ignored by SQLite
+		 * versions built without memory-mapped I/O.
+		 */
+		public Builder setMmapSize(long bytes) {
+			mMmapSize = bytes;
+			return this;
+		}
+
+		/**
+		 * Sets where temporary tables and indices are stored, one of {@link #TEMP_STORE_DEFAULT},
+		 * {@link #TEMP_STORE_FILE} or {@link #TEMP_STORE_MEMORY}.
+		 */
+		public Builder setTempStore(String tempStore) {
+			mTempStore = tempStore;
+			return this;
+		}
+
+		/**
+		 * Runs saves, deletes and updates from every thread on a single writer thread, which
+		 * commits the writes waiting for it together. Callers still wait for their write. Best
+		 * combined with {@link #setWriteAheadLoggingEnabled(boolean)}, so that reads on other
+		 * threads use their own connections and aren't blocked by the writer.
+		 * @see WriteQueue
+		 */
+		public Builder setWriteQueueEnabled(boolean enabled) {
+			mWriteQueueEnabled = enabled;
+			return this;
+		}
+
 		public Builder setDatabaseName(String databaseName) {
 			mDatabaseName = databaseName;
 			return this;
@@ -201,6 +466,19 @@ public class Configuration {
 		public Configuration create() {
 			Configuration configuration = new Configuration(mContext);
 			configuration.mCacheSize = mCacheSize;
+			configuration.mCacheMaxBytes = mCacheMaxBytes;
+			configuration.mCacheBudgets = mCacheBudgets;
+			configuration.mCacheEvictionListener = mCacheEvictionListener;
+			configuration.mTransactionListener = mTransactionListener;
+			configuration.mInitializationListener = mInitializationListener;
+			configuration.mStatementCacheSize = mStatementCacheSize;
+			configuration.mWriteAheadLoggingEnabled = mWriteAheadLoggingEnabled;
+			configuration.mSynchronous = mSynchronous;
+			configuration.mJournalSizeLimit = mJournalSizeLimit;
+			configuration.mPageCacheSize = mPageCacheSize;
+			configuration.mMmapSize = mMmapSize;
+			configuration.mTempStore = mTempStore;
+			configuration.mWriteQueueEnabled = mWriteQueueEnabled;
 
 			// Get database name from meta-data
 			if (mDatabaseName != null) {
@@ -223,6 +501,13 @@ public class Configuration {
 			    configuration.mSqlParser = getMetaDataSqlParserOrDefault();
 			}
 			
+			// Get cache references from meta-data
+			if (mCacheReferences != null) {
+				configuration.mCacheReferences = mCacheReferences;
+			} else {
+				configuration.mCacheReferences = getMetaDataCacheReferencesOrDefault();
+			}
+
 			// Get model classes from meta-data
 			if (mModelClasses != null) {
 				configuration.mModelClasses = mModelClasses;
@@ -278,6 +563,14 @@ public class Configuration {
 		    return mode;
 		}
 
+		private String getMetaDataCacheReferencesOrDefault() {
+			final String references = ReflectionUtils.getMetaData(mContext, AA_CACHE_REFERENCES);
+			if (references == null) {
+				return DEFAULT_CACHE_REFERENCES;
+			}
+			return references;
+		}
+
 		private List<Class<? extends Model>> loadModelList(String[] models) {
 			final List<Class<? extends Model>> modelClasses = new ArrayList<Class<? extends Model>>();
 			final ClassLoader classLoader = mContext.getClass().getClassLoader();
@@ -22,14 +22,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import android.content.Context;
+import android.content.res.AssetManager;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.text.TextUtils;
 
 import com.activeandroid.util.IOUtils;
@@ -45,11 +51,24 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
 	public final static String MIGRATION_PATH = "migrations";
 
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String COPY_SUFFIX = ".copy";
+	private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+	// SQLiteDatabase.execPerConnectionSQL, added in API 30, which is newer than the SDK this is
+	// built against. Null on older releases.
+	private static final Method EXEC_PER_CONNECTION_SQL = findExecPerConnectionSql();
+
 	//////////////////////////////////////////////////////////////////////////////////////
     // PRIVATE FIELDS
     //////////////////////////////////////////////////////////////////////////////////////
 
     private final String mSqlParser;
+    private final Configuration mConfiguration;
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -59,6 +78,7 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 		super(configuration.getContext(), configuration.getDatabaseName(), null, configuration.getDatabaseVersion());
 		copyAttachedDatabase(configuration.getContext(), configuration.getDatabaseName());
 		mSqlParser = configuration.getSqlParser();
+		mConfiguration = configuration;
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -66,13 +86,24 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	@Override
-	public void onOpen(SQLiteDatabase db) {
+	public void onConfigure(SQLiteDatabase db) {
+		// From Jelly Bean on this runs first, outside a transaction, while the pool holds nothing
+		// but the primary connection.
 		executePragmas(db);
+	}
+
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			executePragmas(db);
+		}
 	};
 
 	@Override
 	public void onCreate(SQLiteDatabase db) {
-		executePragmas(db);
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			executePragmas(db);
+		}
 		executeCreate(db);
 		executeMigrations(db, -1, db.getVersion());
 		executeCreateIndex(db);
@@ -80,7 +111,9 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		executePragmas(db);
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			executePragmas(db);
+		}
 		executeCreate(db);
 		executeMigrations(db, oldVersion, newVersion);
 	}
@@ -89,6 +122,13 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	// PUBLIC METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Copies the database attached to the assets as <code>databaseName</code>, or gzipped as
+	 * <code>databaseName.gz</code>, unless the database already exists.
+	 * <p>
+	 * The copy is written to a temporary file, synced to disk and checked by SQLite before it is
+	 * renamed into place, so a copy cut short by a crash is never opened as the database.
+	 */
 	public void copyAttachedDatabase(Context context, String databaseName) {
 		final File dbPath = context.getDatabasePath(databaseName);
 
@@ -97,27 +137,36 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 			return;
 		}
 
+		InputStream input = openAttachedDatabase(context, databaseName);
+		if (input == null) {
+			return;
+		}
+
 		// Make sure we have a path to the file
 		dbPath.getParentFile().mkdirs();
 
-		// Try to copy database file
+		// A temporary file left by an earlier attempt is overwritten.
+		final File tempPath = new File(dbPath.getPath() + COPY_SUFFIX);
 		try {
-			final InputStream inputStream = context.getAssets().open(databaseName);
-			final OutputStream output = new FileOutputStream(dbPath);
-
-			byte[] buffer = new byte[8192];
-			int length;
+			copy(input, tempPath);
+			input = null;
 
-			while ((length = inputStream.read(buffer, 0, 8192)) > 0) {
-				output.write(buffer, 0, length);
+			if (!isIntact(tempPath)) {
+				Log.e("Attached database " + databaseName + " is corrupt.");
+			}
+			else if (!tempPath.renameTo(dbPath)) {
+				Log.e("Couldn't move attached database to " + dbPath + ".");
 			}
-
-			output.flush();
-			output.close();
-			inputStream.close();
 		}
 		catch (IOException e) {
-			Log.e("Failed to open file", e);
+			Log.e("Failed to copy attached database.", e);
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+			tempPath.delete();
+			// Left by the check if the attached database uses write-ahead logging.
+			new File(tempPath.getPath() + "-wal").delete();
+			new File(tempPath.getPath() + "-shm").delete();
 		}
 	}
 
@@ -125,11 +174,170 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
 	// PRIVATE METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	private static InputStream openAttachedDatabase(Context context, String databaseName) {
+		final AssetManager assets = context.getAssets();
+		try {
+			return assets.open(databaseName);
+		}
+		catch (IOException e) {
+			// Not attached uncompressed, try gzipped.
+		}
+
+		try {
+			return new GZIPInputStream(assets.open(databaseName + GZIP_SUFFIX), COPY_BUFFER_SIZE);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	// Closes the input. Seed databases can be large, so the buffer is too.
+	private static void copy(InputStream input, File path) throws IOException {
+		FileOutputStream output = null;
+		try {
+			output = new FileOutputStream(path);
+
+			final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			int length;
+			while ((length = input.read(buffer)) > 0) {
+				output.write(buffer, 0, length);
+			}
+
+			output.flush();
+			output.getFD().sync();
+		}
+		finally {
+			IOUtils.closeQuietly(output);
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	// quick_check finds truncated and malformed pages without checking indexes against their
+	// tables, which integrity_check would spend most of its time on for a large database.
+	private static boolean isIntact(File path) {
+		SQLiteDatabase db = null;
+		Cursor cursor = null;
+		try {
+			db = SQLiteDatabase.openDatabase(path.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+			cursor = db.rawQuery("PRAGMA quick_check", null);
+			return cursor.moveToFirst() && "ok".equalsIgnoreCase(cursor.getString(0));
+		}
+		catch (SQLiteException e) {
+			Log.e("Couldn't check attached database.", e);
+			return false;
+		}
+		finally {
+			IOUtils.closeQuietly(cursor);
+			if (db != null) {
+				db.close();
+			}
+		}
+	}
+
 	private void executePragmas(SQLiteDatabase db) {
 		if (SQLiteUtils.FOREIGN_KEYS_SUPPORTED) {
 			db.execSQL("PRAGMA foreign_keys=ON;");
 			Log.i("Foreign Keys supported. Enabling foreign key features.");
 		}
+
+		// Neither the journal mode nor the synchronous level can change inside the transaction
+		// onCreate and onUpgrade run in before Jelly Bean, they're set by onOpen, which follows them.
+		if (db.inTransaction()) {
+			return;
+		}
+
+		final boolean writeAheadLogging = mConfiguration.isWriteAheadLoggingEnabled()
+				&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+		// With write-ahead logging, statements SQLite considers read-only, pragmas included, are
+		// routed to the reader connections from Jelly Bean on. From API 30 on the pragmas can be
+		// given to every connection of the pool, which applies them after its own settings.
+		if (writeAheadLogging && EXEC_PER_CONNECTION_SQL != null) {
+			enableWriteAheadLogging(db);
+			executePragmas(db, true);
+			return;
+		}
+
+		// Before that they're applied while the primary connection is the only one, which is
+		// the case until write-ahead logging is enabled.
+		executePragmas(db, false);
+		if (writeAheadLogging) {
+			enableWriteAheadLogging(db);
+
+			// Enabling write-ahead logging resets the synchronous level. Before Jelly Bean pragmas
+			// always run on the primary connection, after it the platform's level is kept.
+			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+				executePragma(db, "synchronous", mConfiguration.getSynchronous(), false);
+			}
+			else if (mConfiguration.getSynchronous() != null) {
+				Log.w("The synchronous level can't be set with write-ahead logging before API 30.");
+			}
+		}
+	}
+
+	private void executePragmas(SQLiteDatabase db, boolean perConnection) {
+		executePragma(db, "synchronous", mConfiguration.getSynchronous(), perConnection);
+		executePragma(db, "journal_size_limit", mConfiguration.getJournalSizeLimit(), perConnection);
+		executePragma(db, "cache_size", mConfiguration.getPageCacheSize(), perConnection);
+		executePragma(db, "mmap_size", mConfiguration.getMmapSize(), perConnection);
+		executePragma(db, "temp_store", mConfiguration.getTempStore(), perConnection);
+	}
+
+	private void executePragma(SQLiteDatabase db, String name, Object value, boolean perConnection) {
+		if (value == null) {
+			return;
+		}
+
+		final String sql = "PRAGMA " + name + "=" + value + ";";
+		if (perConnection) {
+			execPerConnectionSql(db, sql);
+			return;
+		}
+
+		// Some pragmas return the new value, which execSQL refuses.
+		final Cursor cursor = db.rawQuery(sql, null);
+		try {
+			cursor.moveToFirst();
+		}
+		finally {
+			cursor.close();
+		}
+	}
+
+	private void enableWriteAheadLogging(SQLiteDatabase db) {
+		if (db.enableWriteAheadLogging()) {
+			Log.i("Write-ahead logging enabled.");
+		}
+	}
+
+	private static Method findExecPerConnectionSql() {
+		if (Build.VERSION.SDK_INT < 30) {
+			return null;
+		}
+
+		try {
+			return SQLiteDatabase.class.getMethod("execPerConnectionSQL", String.class, Object[].class);
+		}
+		catch (NoSuchMethodException e) {
+			Log.w("SQLiteDatabase.execPerConnectionSQL is missing.", e);
+			return null;
+		}
+	}
+
+	private static void execPerConnectionSql(SQLiteDatabase db, String sql) {
+		try {
+			EXEC_PER_CONNECTION_SQL.invoke(db, sql, null);
+		}
+		catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		catch (InvocationTargetException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
 	}
 
 	private void executeCreateIndex(SQLiteDatabase db) {
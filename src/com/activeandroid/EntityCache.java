@@ -0,0 +1,618 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.activeandroid.util.Log;
+
+/**
+ * The identity map behind {@link Cache}, holding at most one instance per model type and id.
+ * <p>
+ * Entities are kept in one stripe per model type, keyed by their primitive id, so threads working
+ * with different types never contend, and lookups neither lock nor allocate. When the cache is
+ * full, stripes are visited in turn and each one evicts with the CLOCK algorithm: a lookup marks
+ * an entity as referenced, and the clock hand clears that mark once before evicting it. This
+ * approximates LRU without reordering entries on every lookup.
+ * <p>
+ * The cache is either sized by the number of entities, or by their memory as estimated by
+ * {@link TableInfo#sizeOf(Model)}. In the latter case a model can also have a budget of its own,
+ * which is enforced by evicting from its stripe only.
+ * <p>
+ * Alternatively the cache can hold entities through weak or soft references, so that it keeps
+ * returning the instance the app holds for a row without keeping that instance alive. Nothing is
+ * evicted then; cleared references are queued by the garbage collector and their entries removed
+ * on the next put.
+ */
+final class EntityCache {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// The entry and its slot in the table, counted with every entity when sized in bytes.
+	private static final int ENTRY_SIZE = 32;
+
+	private static final int REFERENCES_STRONG = 0;
+	private static final int REFERENCES_SOFT = 1;
+	private static final int REFERENCES_WEAK = 2;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final int mMaxSize;
+	private final boolean mSizedInBytes;
+	private final int mReferences;
+	private final ReferenceQueue<Model> mReferenceQueue = new ReferenceQueue<Model>();
+	private final Map<Class<? extends Model>, Integer> mBudgets;
+	private final Cache.EvictionListener mEvictionListener;
+
+	private final AtomicLong mSize = new AtomicLong();
+	private final AtomicLong mEvictionCount = new AtomicLong();
+
+	private final ConcurrentHashMap<Class<? extends Model>, Stripe> mStripes =
+			new ConcurrentHashMap<Class<? extends Model>, Stripe>();
+	private volatile Stripe[] mStripeList = new Stripe[0];
+	private final AtomicInteger mStripeHand = new AtomicInteger();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param maxSize The most entities to hold, or the most bytes if <code>sizedInBytes</code>.
+	 * @param budgets The most bytes the entities of single models may use, or null.
+	 * @param evictionListener Told about every evicted entity, or null.
+	 * @param references One of the <code>CACHE_REFERENCES</code> values of {@link Configuration}.
+	 * Sizes and budgets are ignored unless entities are referenced strongly.
+	 */
+	EntityCache(int maxSize, boolean sizedInBytes, Map<Class<? extends Model>, Integer> budgets,
+			Cache.EvictionListener evictionListener, String references) {
+
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+
+		if (Configuration.CACHE_REFERENCES_WEAK.equalsIgnoreCase(references)) {
+			mReferences = REFERENCES_WEAK;
+		}
+		else if (Configuration.CACHE_REFERENCES_SOFT.equalsIgnoreCase(references)) {
+			mReferences = REFERENCES_SOFT;
+		}
+		else {
+			if (references != null && !Configuration.CACHE_REFERENCES_STRONG.equalsIgnoreCase(references)) {
+				Log.w("Unknown cache references \"" + references + "\", using strong references.");
+			}
+			mReferences = REFERENCES_STRONG;
+		}
+
+		final boolean bounded = mReferences == REFERENCES_STRONG;
+		mMaxSize = bounded ? maxSize : Integer.MAX_VALUE;
+		mSizedInBytes = bounded && sizedInBytes;
+		mBudgets = budgets != null && mSizedInBytes ? budgets
+				: Collections.<Class<? extends Model>, Integer> emptyMap();
+		mEvictionListener = evictionListener;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	Model get(Class<? extends Model> type, long id) {
+		final Stripe stripe = mStripes.get(type);
+		return stripe != null ? stripe.get(id) : null;
+	}
+
+	void put(Model entity) {
+		final Long id = entity.getId();
+		if (id == null) {
+			return;
+		}
+
+		if (mReferences != REFERENCES_STRONG) {
+			removeClearedReferences();
+		}
+
+		final Stripe stripe = getStripe(entity.getClass());
+		final int size = sizeOf(entity);
+
+		// Queries add every row they read, most of which are already cached.
+		if (stripe.touch(id, entity, size)) {
+			return;
+		}
+
+		// An entity that can never fit would only push everything else out. Drop the instance it
+		// replaces, which may be stale.
+		if (size > mMaxSize || (stripe.mBudget > 0 && size > stripe.mBudget)) {
+			mSize.addAndGet(-stripe.remove(id));
+			return;
+		}
+
+		mSize.addAndGet(stripe.put(createEntry(stripe, id, entity, size)));
+
+		if (stripe.isOverBudget()) {
+			trimStripe(stripe);
+		}
+		if (mSize.get() > mMaxSize) {
+			trimToSize();
+		}
+	}
+
+	void remove(Model entity) {
+		final Long id = entity.getId();
+		final Stripe stripe = mStripes.get(entity.getClass());
+		if (id != null && stripe != null) {
+			mSize.addAndGet(-stripe.remove(id));
+		}
+	}
+
+	void evictAll() {
+		for (Stripe stripe : mStripeList) {
+			mSize.addAndGet(-stripe.clear());
+		}
+	}
+
+	/**
+	 * @return The number of entities held, or their estimated size in bytes.
+	 */
+	long size() {
+		return mSize.get();
+	}
+
+	int maxSize() {
+		return mMaxSize;
+	}
+
+	/**
+	 * @return The number of entities evicted to make room, not counting removed or cleared ones.
+	 */
+	long evictionCount() {
+		return mEvictionCount.get();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private int sizeOf(Model entity) {
+		if (!mSizedInBytes) {
+			return 1;
+		}
+
+		return Cache.getTableInfo(entity.getClass()).sizeOf(entity) + ENTRY_SIZE;
+	}
+
+	private Entry createEntry(Stripe stripe, long id, Model entity, int size) {
+		switch (mReferences) {
+		case REFERENCES_WEAK:
+			return new Entry(id, null, new WeakEntityReference(entity, mReferenceQueue, stripe, id), size);
+		case REFERENCES_SOFT:
+			return new Entry(id, null, new SoftEntityReference(entity, mReferenceQueue, stripe, id), size);
+		default:
+			return new Entry(id, entity, null, size);
+		}
+	}
+
+	private void removeClearedReferences() {
+		Reference<? extends Model> reference;
+		while ((reference = mReferenceQueue.poll()) != null) {
+			final EntityReference entityReference = (EntityReference) reference;
+			mSize.addAndGet(-entityReference.getStripe().removeCleared(entityReference));
+		}
+	}
+
+	private Stripe getStripe(Class<? extends Model> type) {
+		Stripe stripe = mStripes.get(type);
+		if (stripe == null) {
+			synchronized (mStripes) {
+				stripe = mStripes.get(type);
+				if (stripe == null) {
+					final Integer budget = mBudgets.get(type);
+					stripe = new Stripe(budget != null ? budget : 0);
+
+					final Stripe[] stripes = new Stripe[mStripeList.length + 1];
+					System.arraycopy(mStripeList, 0, stripes, 0, mStripeList.length);
+					stripes[mStripeList.length] = stripe;
+					mStripeList = stripes;
+
+					mStripes.put(type, stripe);
+				}
+			}
+		}
+
+		return stripe;
+	}
+
+	private void trimStripe(Stripe stripe) {
+		while (stripe.isOverBudget()) {
+			// The first turn may only clear referenced marks.
+			Entry evicted = stripe.evict();
+			if (evicted == null) {
+				evicted = stripe.evict();
+			}
+
+			if (evicted == null) {
+				return;
+			}
+			onEvicted(evicted);
+		}
+	}
+
+	private void trimToSize() {
+		while (mSize.get() > mMaxSize) {
+			final Stripe[] stripes = mStripeList;
+
+			// Give every stripe two turns: the first may only clear referenced marks.
+			Entry evicted = null;
+			for (int i = 0; i < stripes.length * 2 && evicted == null; i++) {
+				final int index = (mStripeHand.getAndIncrement() & Integer.MAX_VALUE) % stripes.length;
+				evicted = stripes[index].evict();
+			}
+
+			if (evicted == null) {
+				return;
+			}
+			onEvicted(evicted);
+		}
+	}
+
+	// Called without holding the lock of any stripe.
+	private void onEvicted(Entry entry) {
+		mSize.addAndGet(-entry.size);
+		mEvictionCount.incrementAndGet();
+
+		if (mEvictionListener != null) {
+			mEvictionListener.onEntityEvicted(entry.entity, entry.size);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A cached entity, held either directly or through a weak or soft reference.
+	 */
+	private static final class Entry {
+		final long id;
+		final Model entity;
+		final EntityReference reference;
+		final int size;
+		volatile boolean referenced = true;
+
+		Entry(long id, Model entity, EntityReference reference, int size) {
+			this.id = id;
+			this.entity = entity;
+			this.reference = reference;
+			this.size = size;
+		}
+
+		/**
+		 * @return The entity, or null if its reference has been cleared.
+		 */
+		Model getEntity() {
+			return entity != null ? entity : reference.get();
+		}
+	}
+
+	/**
+	 * A reference that knows where its entry is, so that it can be removed once cleared.
+	 */
+	private interface EntityReference {
+		Model get();
+
+		Stripe getStripe();
+
+		long getId();
+	}
+
+	private static final class WeakEntityReference extends WeakReference<Model> implements EntityReference {
+		private final Stripe mStripe;
+		private final long mId;
+
+		WeakEntityReference(Model entity, ReferenceQueue<Model> queue, Stripe stripe, long id) {
+			super(entity, queue);
+			mStripe = stripe;
+			mId = id;
+		}
+
+		@Override
+		public Stripe getStripe() {
+			return mStripe;
+		}
+
+		@Override
+		public long getId() {
+			return mId;
+		}
+	}
+
+	private static final class SoftEntityReference extends SoftReference<Model> implements EntityReference {
+		private final Stripe mStripe;
+		private final long mId;
+
+		SoftEntityReference(Model entity, ReferenceQueue<Model> queue, Stripe stripe, long id) {
+			super(entity, queue);
+			mStripe = stripe;
+			mId = id;
+		}
+
+		@Override
+		public Stripe getStripe() {
+			return mStripe;
+		}
+
+		@Override
+		public long getId() {
+			return mId;
+		}
+	}
+
+	/**
+	 * The entities of one model type in an open-addressing table keyed by the primitive id, so that
+	 * lookups neither box the id nor allocate. Readers don't lock: slots are read with volatile
+	 * semantics and the table is replaced as a whole when it grows. Writers lock the stripe.
+	 */
+	private static final class Stripe {
+		private static final int INITIAL_CAPACITY = 16;
+
+		// Marks a removed entity so that probes continue past it.
+		private static final Entry TOMBSTONE = new Entry(0, null, null, 0);
+
+		// The most bytes this stripe may hold, or 0 for no budget of its own.
+		final int mBudget;
+
+		private volatile AtomicReferenceArray<Entry> mSlots = new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+
+		// Written while holding the lock, read without it by isOverBudget.
+		private volatile long mWeight;
+
+		// Guarded by this.
+		private int mSize;
+		private int mTombstones;
+		private int mClockHand;
+
+		Stripe(int budget) {
+			mBudget = budget;
+		}
+
+		boolean isOverBudget() {
+			return mBudget > 0 && mWeight > mBudget;
+		}
+
+		Model get(long id) {
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int mask = slots.length() - 1;
+
+			for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+				final Entry entry = slots.get(i);
+				if (entry == null) {
+					return null;
+				}
+				else if (entry != TOMBSTONE && entry.id == id) {
+					entry.referenced = true;
+					return entry.getEntity();
+				}
+			}
+		}
+
+		/**
+		 * Marks the entry of <code>entity</code> as referenced, without locking or allocating.
+		 *
+		 * @return false if the entity isn't cached, or with another instance or size.
+		 */
+		boolean touch(long id, Model entity, int size) {
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int mask = slots.length() - 1;
+
+			for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+				final Entry entry = slots.get(i);
+				if (entry == null) {
+					return false;
+				}
+				else if (entry != TOMBSTONE && entry.id == id) {
+					if (entry.getEntity() != entity || entry.size != size) {
+						return false;
+					}
+					entry.referenced = true;
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @return The change in size, which is less than the size of the entry if it replaced
+		 * another.
+		 */
+		synchronized long put(Entry newEntry) {
+			final long id = newEntry.id;
+
+			if ((mSize + mTombstones + 1) * 4 > mSlots.length() * 3) {
+				rehash();
+			}
+
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int mask = slots.length() - 1;
+			int free = -1;
+
+			for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+				final Entry entry = slots.get(i);
+				if (entry == null) {
+					if (free < 0) {
+						free = i;
+					}
+					else {
+						mTombstones--;
+					}
+					slots.set(free, newEntry);
+					mSize++;
+					mWeight += newEntry.size;
+					return newEntry.size;
+				}
+				else if (entry == TOMBSTONE) {
+					if (free < 0) {
+						free = i;
+					}
+				}
+				else if (entry.id == id) {
+					slots.set(i, newEntry);
+					mWeight += newEntry.size - entry.size;
+					return newEntry.size - entry.size;
+				}
+			}
+		}
+
+		/**
+		 * @return The size of the removed entity, or 0 if there was none.
+		 */
+		synchronized long remove(long id) {
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int mask = slots.length() - 1;
+
+			for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+				final Entry entry = slots.get(i);
+				if (entry == null) {
+					return 0;
+				}
+				else if (entry != TOMBSTONE && entry.id == id) {
+					removeAt(slots, i);
+					return entry.size;
+				}
+			}
+		}
+
+		/**
+		 * Removes the entry of a cleared reference, unless it has been replaced since.
+		 *
+		 * @return The size of the removed entry, or 0 if there was none.
+		 */
+		synchronized long removeCleared(EntityReference reference) {
+			final long id = reference.getId();
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int mask = slots.length() - 1;
+
+			for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+				final Entry entry = slots.get(i);
+				if (entry == null) {
+					return 0;
+				}
+				else if (entry != TOMBSTONE && entry.id == id) {
+					if (entry.reference != reference) {
+						return 0;
+					}
+					removeAt(slots, i);
+					return entry.size;
+				}
+			}
+		}
+
+		/**
+		 * @return The size of the removed entities.
+		 */
+		synchronized long clear() {
+			final long removed = mWeight;
+			mSlots = new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+			mWeight = 0;
+			mSize = 0;
+			mTombstones = 0;
+			mClockHand = 0;
+
+			return removed;
+		}
+
+		/**
+		 * Advances the clock hand for up to one revolution.
+		 *
+		 * @return The evicted entry, or null if every entity was referenced.
+		 */
+		synchronized Entry evict() {
+			final AtomicReferenceArray<Entry> slots = mSlots;
+			final int length = slots.length();
+			if (mSize == 0) {
+				return null;
+			}
+
+			for (int scanned = 0; scanned <= length; scanned++) {
+				final int i = mClockHand;
+				mClockHand = (mClockHand + 1) % length;
+
+				final Entry entry = slots.get(i);
+				if (entry == null || entry == TOMBSTONE) {
+					continue;
+				}
+				else if (entry.referenced) {
+					entry.referenced = false;
+				}
+				else {
+					removeAt(slots, i);
+					return entry;
+				}
+			}
+
+			return null;
+		}
+
+		private void removeAt(AtomicReferenceArray<Entry> slots, int index) {
+			mWeight -= slots.get(index).size;
+			slots.set(index, TOMBSTONE);
+			mSize--;
+			mTombstones++;
+		}
+
+		// Copies the live entries into a table sized for them, dropping tombstones.
+		private void rehash() {
+			final AtomicReferenceArray<Entry> oldSlots = mSlots;
+			int capacity = INITIAL_CAPACITY;
+			while ((mSize + 1) * 2 > capacity) {
+				capacity <<= 1;
+			}
+
+			final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<Entry>(capacity);
+			final int mask = capacity - 1;
+			for (int j = 0; j < oldSlots.length(); j++) {
+				final Entry entry = oldSlots.get(j);
+				if (entry == null || entry == TOMBSTONE) {
+					continue;
+				}
+
+				int i = hash(entry.id) & mask;
+				while (slots.get(i) != null) {
+					i = (i + 1) & mask;
+				}
+				slots.set(i, entry);
+			}
+
+			mSlots = slots;
+			mTombstones = 0;
+			mClockHand = 0;
+		}
+
+		private static int hash(long id) {
+			final long h = id * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A belongs-to relation that is loaded on first access instead of with the row that refers to it.
+ * <p>
+ * Declare the column as <code>&#64;Column public Lazy&lt;Author&gt; author;</code>. Loading the row
+ * only reads the foreign id, and {@link #get()} looks the related model up in the cache or loads
+ * it the first time it is called. The column is stored like a plain relation, so a field can be
+ * switched between <code>Author</code> and <code>Lazy&lt;Author&gt;</code> without a migration.
+ */
+public final class Lazy<T extends Model> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Class<T> mType;
+	private final Long mId;
+	private volatile T mEntity;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	Lazy(Class<T> type, long id) {
+		mType = type;
+		mId = id;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Lazy(T entity) {
+		mType = (Class<T>) entity.getClass();
+		mId = null;
+		mEntity = entity;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return A relation to an entity that is already loaded, or null if <code>entity</code> is.
+	 */
+	public static <T extends Model> Lazy<T> of(T entity) {
+		return entity != null ? new Lazy<T>(entity) : null;
+	}
+
+	public Class<T> getType() {
+		return mType;
+	}
+
+	/**
+	 * @return The id of the related model, without loading it.
+	 */
+	public Long getId() {
+		final T entity = mEntity;
+		return entity != null ? entity.getId() : mId;
+	}
+
+	/**
+	 * @return The related model, loaded on the first call, or null if the row doesn't exist.
+	 */
+	public T get() {
+		T entity = mEntity;
+		if (entity == null) {
+			entity = Model.loadEntity(mType, mId);
+			mEntity = entity;
+		}
+
+		return entity;
+	}
+
+	public boolean isLoaded() {
+		return mEntity != null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// OVERRIDEN METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return "Lazy<" + Cache.getTableName(mType) + "@" + getId() + ">";
+	}
+}
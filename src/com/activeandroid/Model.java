@@ -18,19 +18,27 @@ package com.activeandroid;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
 
-import com.activeandroid.content.ContentProvider;
 import com.activeandroid.query.Delete;
 import com.activeandroid.query.Select;
-import com.activeandroid.serializer.TypeSerializer;
 import com.activeandroid.util.Log;
-import com.activeandroid.util.ReflectionUtils;
+import com.activeandroid.util.RelationBatch;
+import com.activeandroid.util.SQLiteUtils;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 @SuppressWarnings("unchecked")
 public abstract class Model {
@@ -38,6 +46,9 @@ public abstract class Model {
 	/** Prime number used for hashcode() implementation. */
 	private static final int HASH_PRIME = 739;
 
+	// SQLITE_MAX_VARIABLE_NUMBER, which defaults to 999.
+	private static final int MAX_VARIABLES = 999;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -46,6 +57,15 @@ public abstract class Model {
 
 	private final TableInfo mTableInfo;
 	private final String idName;
+
+	// Children loaded by prefetchMany, keyed by getManyKey. Replaced rather than modified.
+	private volatile Map<String, PrefetchedMany> mPrefetchedMany;
+
+	// The state of every column as last loaded or saved, so that updates only write what changed.
+	// See readSnapshot for the layout.
+	private long[] mSnapshot;
+	private Object[] mSnapshotValues;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -64,107 +84,59 @@ public abstract class Model {
 	}
 
 	public final void delete() {
-		Cache.openDatabase().delete(mTableInfo.getTableName(), idName+"=?", new String[] { getId().toString() });
-		Cache.removeEntity(this);
-
-		Cache.getContext().getContentResolver()
-				.notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
+		WriteQueue.run(new Callable<Void>() {
+			@Override
+			public Void call() {
+				deleteNow();
+				return null;
+			}
+		});
 	}
 
 	public final Long save() {
-		final SQLiteDatabase db = Cache.openDatabase();
-		final ContentValues values = new ContentValues();
-
-		for (Field field : mTableInfo.getFields()) {
-			final String fieldName = mTableInfo.getColumnName(field);
-			Class<?> fieldType = field.getType();
-
-			field.setAccessible(true);
-
-			try {
-				Object value = field.get(this);
-
-				if (value != null) {
-					final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-					if (typeSerializer != null) {
-						// serialize data
-						value = typeSerializer.serialize(value);
-						// set new object type
-						if (value != null) {
-							fieldType = value.getClass();
-							// check that the serializer returned what it promised
-							if (!fieldType.equals(typeSerializer.getSerializedType())) {
-								Log.w(String.format("TypeSerializer returned wrong type: expected a %s but got a %s",
-										typeSerializer.getSerializedType(), fieldType));
-							}
-						}
-					}
-				}
-
-				// TODO: Find a smarter way to do this? This if block is necessary because we
-				// can't know the type until runtime.
-				if (value == null) {
-					values.putNull(fieldName);
-				}
-				else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-					values.put(fieldName, (Byte) value);
-				}
-				else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-					values.put(fieldName, (Short) value);
-				}
-				else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-					values.put(fieldName, (Integer) value);
-				}
-				else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-					values.put(fieldName, (Long) value);
-				}
-				else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-					values.put(fieldName, (Float) value);
-				}
-				else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-					values.put(fieldName, (Double) value);
-				}
-				else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-					values.put(fieldName, (Boolean) value);
-				}
-				else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-					values.put(fieldName, value.toString());
-				}
-				else if (fieldType.equals(String.class)) {
-					values.put(fieldName, value.toString());
-				}
-				else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-					values.put(fieldName, (byte[]) value);
-				}
-				else if (ReflectionUtils.isModel(fieldType)) {
-					values.put(fieldName, ((Model) value).getId());
-				}
-				else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-					values.put(fieldName, ((Enum<?>) value).name());
-				}
-			}
-			catch (IllegalArgumentException e) {
-				Log.e(e.getClass().getName(), e);
+		return WriteQueue.run(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return saveNow();
 			}
-			catch (IllegalAccessException e) {
-				Log.e(e.getClass().getName(), e);
+		});
+	}
+	// Convenience methods
+
+	/**
+	 * @see ActiveAndroid#saveAll(Collection)
+	 */
+	static void saveAll(Collection<? extends Model> models) {
+		final Map<Class<? extends Model>, List<Model>> modelsByType = new LinkedHashMap<Class<? extends Model>, List<Model>>();
+		for (Model model : models) {
+			List<Model> typeModels = modelsByType.get(model.getClass());
+			if (typeModels == null) {
+				typeModels = new ArrayList<Model>();
+				modelsByType.put(model.getClass(), typeModels);
 			}
+			typeModels.add(model);
 		}
 
-		if (mId == null) {
-			mId = db.insert(mTableInfo.getTableName(), null, values);
+		final SQLiteDatabase db = Cache.openDatabase();
+		db.beginTransaction();
+		try {
+			for (Iterator<List<Model>> iterator = modelsByType.values().iterator(); iterator.hasNext();) {
+				final List<Model> typeModels = iterator.next();
+				if (!saveAll(db, Cache.getTableInfo(typeModels.get(0).getClass()), typeModels)) {
+					iterator.remove();
+				}
+			}
+			db.setTransactionSuccessful();
 		}
-		else {
-			db.update(mTableInfo.getTableName(), values, idName+"=" + mId, null);
+		finally {
+			db.endTransaction();
 		}
 
-		Cache.getContext().getContentResolver()
-				.notifyChange(ContentProvider.createUri(mTableInfo.getType(), mId), null);
-		return mId;
+		for (Class<? extends Model> type : modelsByType.keySet()) {
+			ChangeNotifier.notifyChange(type, null);
+		}
 	}
 
-	// Convenience methods
-
 	public static void delete(Class<? extends Model> type, long id) {
 		TableInfo tableInfo = Cache.getTableInfo(type);
 		new Delete().from(type).where(tableInfo.getIdName()+"=?", id).execute();
@@ -175,120 +147,409 @@ public abstract class Model {
 		return (T) new Select().from(type).where(tableInfo.getIdName()+"=?", id).executeSingle();
 	}
 
-	// Model population
+	/**
+	 * Loads the children of every model in <code>parents</code> with one query per 999 parents,
+	 * instead of one query per parent. {@link #getMany(Class, String)} then returns the prefetched
+	 * children until the parent is loaded again, or a model of <code>type</code> is saved or
+	 * deleted.
+	 *
+	 * @param foreignKey The column of <code>type</code> that refers to the parents.
+	 */
+	public static <T extends Model> void prefetchMany(List<? extends Model> parents, Class<T> type,
+			String foreignKey) {
+
+		final TableInfo tableInfo = Cache.getTableInfo(type);
+		ColumnInfo foreignKeyColumn = null;
+		for (ColumnInfo column : tableInfo.getColumns()) {
+			if (column.getName().equals(foreignKey)) {
+				foreignKeyColumn = column;
+				break;
+			}
+		}
 
-	public final void loadFromCursor(Cursor cursor) {
-        /**
-         * Obtain the columns ordered to fix issue #106 (https://github.com/pardom/ActiveAndroid/issues/106)
-         * when the cursor have multiple columns with same name obtained from join tables.
-         */
-        List<String> columnsOrdered = new ArrayList<String>(Arrays.asList(cursor.getColumnNames()));
-		for (Field field : mTableInfo.getFields()) {
-			final String fieldName = mTableInfo.getColumnName(field);
-			Class<?> fieldType = field.getType();
-			final int columnIndex = columnsOrdered.indexOf(fieldName);
-
-			if (columnIndex < 0) {
-				continue;
+		if (foreignKeyColumn == null
+				|| (foreignKeyColumn.getType() != ColumnInfo.Type.MODEL && foreignKeyColumn.getType() != ColumnInfo.Type.LAZY)) {
+			throw new IllegalArgumentException(foreignKey + " isn't a relation of " + type.getName() + ".");
+		}
+
+		final int writeCount = ChangeNotifier.getWriteCount(type);
+		final LongSparseArray<List<T>> children = new LongSparseArray<List<T>>();
+		for (Model parent : parents) {
+			if (parent.getId() != null) {
+				children.put(parent.getId(), new ArrayList<T>());
 			}
+		}
 
-			field.setAccessible(true);
+		final int size = children.size();
+		for (int start = 0; start < size; start += MAX_VARIABLES) {
+			final int count = Math.min(MAX_VARIABLES, size - start);
+			final String[] arguments = new String[count];
+			final String[] parameters = new String[count];
+			for (int i = 0; i < count; i++) {
+				arguments[i] = String.valueOf(children.keyAt(start + i));
+				parameters[i] = "?";
+			}
 
-			try {
-				boolean columnIsNull = cursor.isNull(columnIndex);
-				TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
-				Object value = null;
+			final String sql = String.format("SELECT * FROM %s WHERE %s.%s IN (%s) ORDER BY %s",
+					tableInfo.getTableName(), tableInfo.getTableName(), foreignKey,
+					TextUtils.join(", ", parameters), tableInfo.getIdName());
 
-				if (typeSerializer != null) {
-					fieldType = typeSerializer.getSerializedType();
+			final List<T> entities = SQLiteUtils.rawQuery(type, sql, arguments, true);
+			for (T entity : entities) {
+				final Long parentId = getRelationId(foreignKeyColumn, entity);
+				final List<T> siblings = parentId != null ? children.get(parentId) : null;
+				if (siblings != null) {
+					siblings.add(entity);
 				}
+			}
+		}
 
-				// TODO: Find a smarter way to do this? This if block is necessary because we
-				// can't know the type until runtime.
-				if (columnIsNull) {
-					field = null;
-				}
-				else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-					value = cursor.getInt(columnIndex);
-				}
-				else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-					value = cursor.getLong(columnIndex);
+		final String key = getManyKey(type, foreignKey);
+		for (Model parent : parents) {
+			if (parent.getId() != null) {
+				parent.setPrefetchedMany(key, new PrefetchedMany(children.get(parent.getId()), writeCount));
+			}
+		}
+	}
+
+	// Model population
+
+	public final void loadFromCursor(Cursor cursor) {
+		loadFromCursor(cursor, mTableInfo.getColumnIndexes(cursor.getColumnNames()));
+
+		if (mId != null) {
+			Cache.addEntity(this);
+		}
+	}
+
+	/**
+	 * Loads the current row of <code>cursor</code> with a column plan from
+	 * {@link TableInfo#getColumnIndexes(String[])}, so that callers reading many rows only resolve
+	 * the cursor columns once. Unlike {@link #loadFromCursor(Cursor)} the model is not added to
+	 * the {@link Cache}; that is left to the caller.
+	 */
+	public final void loadFromCursor(Cursor cursor, int[] columnIndexes) {
+		final ColumnInfo[] columns = mTableInfo.getColumns();
+
+		// Children prefetched with an earlier load of this row may be out of date.
+		mPrefetchedMany = null;
+
+		final ModelBinder<Model> binder = (ModelBinder<Model>) mTableInfo.getBinder();
+		if (binder != null) {
+			if (columnIndexes[0] >= 0 && !cursor.isNull(columnIndexes[0])) {
+				mId = cursor.getLong(columnIndexes[0]);
+			}
+			binder.loadValues(this, cursor, columnIndexes);
+		}
+		else {
+			for (int i = 0; i < columns.length; i++) {
+				if (columnIndexes[i] < 0) {
+					continue;
 				}
-				else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-					value = cursor.getFloat(columnIndex);
+
+				try {
+					columns[i].loadValue(this, cursor, columnIndexes[i]);
 				}
-				else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-					value = cursor.getDouble(columnIndex);
+				catch (IllegalArgumentException e) {
+					Log.e(e.getClass().getName(), e);
 				}
-				else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-					value = cursor.getInt(columnIndex) != 0;
+				catch (IllegalAccessException e) {
+					Log.e(e.getClass().getName(), e);
 				}
-				else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
-					value = cursor.getString(columnIndex).charAt(0);
+			}
+		}
+
+		takeSnapshot();
+	}
+
+	// Model persistence
+
+	final void bindValues(ContentValues values) {
+		final ModelBinder<Model> binder = (ModelBinder<Model>) mTableInfo.getBinder();
+
+		if (binder != null) {
+			values.put(idName, mId);
+			binder.bindValues(this, values);
+		}
+		else {
+			for (ColumnInfo column : mTableInfo.getColumns()) {
+				try {
+					column.bindValue(this, values);
 				}
-				else if (fieldType.equals(String.class)) {
-					value = cursor.getString(columnIndex);
+				catch (IllegalArgumentException e) {
+					Log.e(e.getClass().getName(), e);
 				}
-				else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
-					value = cursor.getBlob(columnIndex);
+				catch (IllegalAccessException e) {
+					Log.e(e.getClass().getName(), e);
 				}
-				else if (ReflectionUtils.isModel(fieldType)) {
-					final long entityId = cursor.getLong(columnIndex);
-					final Class<? extends Model> entityType = (Class<? extends Model>) fieldType;
+			}
+		}
+	}
 
-					Model entity = Cache.getEntity(entityType, entityId);
-					if (entity == null) {
-						entity = new Select().from(entityType).where(idName+"=?", entityId).executeSingle();
-					}
+	/**
+	 * Forgets a save that was rolled back. A model that was inserted has no row anymore, so it's
+	 * new again, and the cached instance may hold values that were never stored.
+	 */
+	final void rollBackSave(boolean inserted) {
+		Cache.removeEntity(this);
+		if (inserted) {
+			mId = null;
+		}
+		mSnapshot = null;
+		mSnapshotValues = null;
+	}
 
-					value = entity;
-				}
-				else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
-					@SuppressWarnings("rawtypes")
-					final Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
-					value = Enum.valueOf(enumType, cursor.getString(columnIndex));
-				}
+	/**
+	 * Inserts or updates models of one type with statements compiled once for all of them. Models
+	 * that didn't change since they were loaded or saved are skipped.
+	 *
+	 * @return true if any row was written.
+	 */
+	private static boolean saveAll(SQLiteDatabase db, TableInfo tableInfo, List<Model> models) {
+		final ColumnInfo[] columns = tableInfo.getColumns();
+		final ContentValues values = new ContentValues();
+		SQLiteStatement insert = null;
+		SQLiteStatement update = null;
+		boolean written = false;
 
-				// Use a deserializer if one is available
-				if (typeSerializer != null && !columnIsNull) {
-					value = typeSerializer.deserialize(value);
+		try {
+			for (Model model : models) {
+				values.clear();
+				model.bindValues(values);
+
+				if (model.mId != null && model.getChangedValues(values).size() == 0) {
+					continue;
 				}
 
-				// Set the field value
-				if (value != null) {
-					field.set(this, value);
+				final boolean inserted = model.mId == null;
+				if (inserted) {
+					if (insert == null) {
+						insert = db.compileStatement(tableInfo.getInsertSql());
+					}
+					bindStatement(insert, columns, values);
+					model.mId = insert.executeInsert();
 				}
+				else {
+					if (update == null) {
+						update = db.compileStatement(tableInfo.getUpdateSql());
+					}
+					bindStatement(update, columns, values);
+					update.bindLong(columns.length + 1, model.mId);
+					update.execute();
+				}
+				WriteQueue.recordSave(model, inserted);
+
+				model.takeSnapshot();
+				written = true;
 			}
-			catch (IllegalArgumentException e) {
-				Log.e(e.getClass().getName(), e);
+		}
+		finally {
+			if (insert != null) {
+				insert.close();
 			}
-			catch (IllegalAccessException e) {
-				Log.e(e.getClass().getName(), e);
+			if (update != null) {
+				update.close();
 			}
-			catch (SecurityException e) {
-				Log.e(e.getClass().getName(), e);
+		}
+
+		return written;
+	}
+
+	/**
+	 * @return The values of the columns that differ from the snapshot, or all of them if there is
+	 * none. The id is never part of the changes, since it identifies the row.
+	 */
+	private ContentValues getChangedValues(ContentValues values) {
+		final long[] snapshot = mSnapshot;
+		final Object[] snapshotValues = mSnapshotValues;
+		if (snapshot == null) {
+			return values;
+		}
+
+		final ColumnInfo[] columns = mTableInfo.getColumns();
+		final long[] current = new long[snapshot.length];
+		final Object[] currentValues = new Object[columns.length];
+		if (!readSnapshot(current, currentValues)) {
+			return values;
+		}
+
+		final ContentValues changedValues = new ContentValues(values);
+		changedValues.remove(idName);
+		for (int i = 1; i < columns.length; i++) {
+			if (current[i] == snapshot[i] && isNull(current, columns.length, i) == isNull(snapshot, columns.length, i)
+					&& ColumnInfo.isSameValue(snapshotValues[i], currentValues[i])) {
+				changedValues.remove(columns[i].getName());
 			}
 		}
 
-		if (mId != null) {
-			Cache.addEntity(this);
+		return changedValues;
+	}
+
+	/**
+	 * Remembers what was loaded or saved, so that saving only writes the columns that change.
+	 * Cached models are loaded again by every query that reads them, so the arrays are reused.
+	 */
+	private void takeSnapshot() {
+		long[] states = mSnapshot;
+		Object[] values = mSnapshotValues;
+		if (states == null) {
+			final int columnCount = mTableInfo.getColumns().length;
+			states = new long[getSnapshotLength(columnCount)];
+			values = new Object[columnCount];
+		}
+
+		if (readSnapshot(states, values)) {
+			mSnapshot = states;
+			mSnapshotValues = values;
+		}
+		else {
+			mSnapshot = null;
+			mSnapshotValues = null;
+		}
+	}
+
+	/**
+	 * Reads the state of every column into <code>states</code> and <code>values</code>, as
+	 * {@link ColumnInfo#readState(Model, long[], Object[], int)} describes, followed in
+	 * <code>states</code> by a bit set of the columns that are null. Nothing is copied, so loading
+	 * a row allocates nothing once the arrays exist.
+	 *
+	 * @return false if a column couldn't be read.
+	 */
+	private boolean readSnapshot(long[] states, Object[] values) {
+		final ColumnInfo[] columns = mTableInfo.getColumns();
+		Arrays.fill(states, columns.length, states.length, 0);
+
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				if (!columns[i].readState(this, states, values, i)) {
+					states[columns.length + (i >> 6)] |= 1L << i;
+				}
+			}
+		}
+		catch (IllegalAccessException e) {
+			Log.e("IllegalAccessException", e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of longs in the snapshot of a table with <code>columnCount</code> columns.
+	 */
+	static int getSnapshotLength(int columnCount) {
+		return columnCount + ((columnCount + 63) >> 6);
+	}
+
+	private static boolean isNull(long[] snapshot, int columnCount, int index) {
+		return (snapshot[columnCount + (index >> 6)] & (1L << index)) != 0;
+	}
+
+	private static void bindStatement(SQLiteStatement statement, ColumnInfo[] columns, ContentValues values) {
+		for (int i = 0; i < columns.length; i++) {
+			DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns[i].getName()));
 		}
 	}
 
+	// Relations
+
+	static <T extends Model> T loadEntity(Class<T> type, long id) {
+		T entity = (T) Cache.getEntity(type, id);
+		if (entity == null) {
+			entity = (T) RelationBatch.getEntity(type, id);
+		}
+		if (entity == null) {
+			entity = load(type, id);
+		}
+
+		return entity;
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PROTECTED METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	protected final <T extends Model> List<T> getMany(Class<T> type, String foreignKey) {
+		final Map<String, PrefetchedMany> prefetched = mPrefetchedMany;
+		if (prefetched != null) {
+			final PrefetchedMany children = prefetched.get(getManyKey(type, foreignKey));
+			if (children != null && children.mWriteCount == ChangeNotifier.getWriteCount(type)) {
+				return new ArrayList<T>((List<T>) children.mChildren);
+			}
+		}
+
 		return new Select().from(type).where(Cache.getTableName(type) + "." + foreignKey + "=?", getId()).execute();
 	}
 
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void deleteNow() {
+		Cache.openDatabase().delete(mTableInfo.getTableName(), idName+"=?", new String[] { getId().toString() });
+		Cache.removeEntity(this);
+
+		ChangeNotifier.notifyChange(mTableInfo.getType(), mId);
+	}
+
+	private Long saveNow() {
+		final SQLiteDatabase db = Cache.openDatabase();
+		final ContentValues values = new ContentValues();
+		bindValues(values);
+
+		final boolean inserted = mId == null;
+		if (inserted) {
+			mId = db.insert(mTableInfo.getTableName(), null, values);
+		}
+		else {
+			final ContentValues changedValues = getChangedValues(values);
+			if (changedValues.size() == 0) {
+				return mId;
+			}
+
+			db.update(mTableInfo.getTableName(), changedValues, idName+"=" + mId, null);
+		}
+		WriteQueue.recordSave(this, inserted);
+		// Taken after the insert, so that the snapshot has the id.
+		takeSnapshot();
+
+		ChangeNotifier.notifyChange(mTableInfo.getType(), mId);
+		return mId;
+	}
+
+	private void setPrefetchedMany(String key, PrefetchedMany children) {
+		final Map<String, PrefetchedMany> prefetched = mPrefetchedMany != null
+				? new HashMap<String, PrefetchedMany>(mPrefetchedMany)
+				: new HashMap<String, PrefetchedMany>();
+		prefetched.put(key, children);
+		mPrefetchedMany = prefetched;
+	}
+
+	private static String getManyKey(Class<? extends Model> type, String foreignKey) {
+		return type.getName() + "#" + foreignKey;
+	}
+
+	private static Long getRelationId(ColumnInfo column, Model entity) {
+		final Object value;
+		try {
+			value = column.getField().get(entity);
+		}
+		catch (IllegalAccessException e) {
+			Log.e("IllegalAccessException", e);
+			return null;
+		}
+
+		if (value instanceof Model) {
+			return ((Model) value).getId();
+		}
+		else if (value instanceof Lazy) {
+			return ((Lazy<?>) value).getId();
+		}
+
+		return null;
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// OVERRIDEN METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -317,4 +578,22 @@ public abstract class Model {
 		hash += HASH_PRIME * mTableInfo.getTableName().hashCode();
 		return hash; //To change body of generated methods, choose Tools | Templates.
 	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Children loaded by prefetchMany, which are out of date once the write count of their type
+	 * has moved on.
+	 */
+	private static final class PrefetchedMany {
+		private final List<? extends Model> mChildren;
+		private final int mWriteCount;
+
+		private PrefetchedMany(List<? extends Model> children, int writeCount) {
+			mChildren = children;
+			mWriteCount = writeCount;
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Binds the columns of a model to {@link ContentValues} and reads them back from a {@link Cursor}
+ * without reflection.
+ * <p>
+ * Implementations are generated at compile time by the ActiveAndroid annotation processor as
+ * <code>&lt;Model&gt;$$ModelBinder</code> in the package of the model. When no binder is present,
+ * or the binder does not match the runtime {@link TableInfo}, the reflective path in {@link Model}
+ * is used instead.
+ */
+public abstract class ModelBinder<T extends Model> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public static final String SUFFIX = "$$ModelBinder";
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private ColumnInfo[] mColumns;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return The column names handled by this binder, excluding the id column, in the same
+	 * order as {@link TableInfo#getFields()}.
+	 */
+	public abstract String[] getColumnNames();
+
+	/**
+	 * Puts the value of every column except the id into <code>values</code>.
+	 */
+	public abstract void bindValues(T model, ContentValues values);
+
+	/**
+	 * Reads every column except the id from the current row of <code>cursor</code>.
+	 *
+	 * @param columnIndexes The cursor index of each {@link TableInfo} column, or -1 if the cursor
+	 * does not contain it. Index 0 is the id column, so the binder's columns start at 1.
+	 */
+	public abstract void loadValues(T model, Cursor cursor, int[] columnIndexes);
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	void setColumns(ColumnInfo[] columns) {
+		mColumns = columns;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PROTECTED METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Fallbacks for columns the generated code can't bind directly, such as serialized types.
+	// Columns are numbered like the cursor indexes passed to loadValues.
+
+	protected final void putValue(ContentValues values, int column, Object value) {
+		mColumns[column].putValue(values, value);
+	}
+
+	protected final Object readValue(Cursor cursor, int columnIndex, int column) {
+		return mColumns[column].readValue(cursor, columnIndex);
+	}
+
+	protected static <E extends Model> E loadEntity(Class<E> type, long id) {
+		return Model.loadEntity(type, id);
+	}
+}
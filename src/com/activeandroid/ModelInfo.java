@@ -20,18 +20,28 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
+import android.os.SystemClock;
 
+import com.activeandroid.serializer.BigDecimalSerializer;
 import com.activeandroid.serializer.CalendarSerializer;
 import com.activeandroid.serializer.SqlDateSerializer;
 import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.serializer.UUIDSerializer;
 import com.activeandroid.serializer.UtilDateSerializer;
 import com.activeandroid.serializer.FileSerializer;
 import com.activeandroid.util.Log;
@@ -39,11 +49,25 @@ import com.activeandroid.util.ReflectionUtils;
 import dalvik.system.DexFile;
 
 final class ModelInfo {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// How long the schema cache waits before it's written, so that it doesn't compete with startup.
+	private static final long SCHEMA_CACHE_WRITE_DELAY = 1000;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
-	private Map<Class<? extends Model>, TableInfo> mTableInfos = new HashMap<Class<? extends Model>, TableInfo>();
+	private final Set<Class<? extends Model>> mModelClasses;
+	private final ConcurrentMap<Class<? extends Model>, TableInfo> mTableInfos =
+			new ConcurrentHashMap<Class<? extends Model>, TableInfo>();
+	private volatile Collection<TableInfo> mAllTableInfos;
+	private final SchemaCache mSchemaCache;
+	private final AtomicBoolean mSchemaCacheWritePending = new AtomicBoolean();
+	private List<String> mScannedModels;
+	private List<String> mScannedSerializers;
 	private Map<Class<?>, TypeSerializer> mTypeSerializers = new HashMap<Class<?>, TypeSerializer>() {
 		{
 			put(Calendar.class, new CalendarSerializer());
@@ -58,15 +82,27 @@ final class ModelInfo {
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	public ModelInfo(Configuration configuration) {
-		if (!loadModelFromMetaData(configuration)) {
+		final List<Class<? extends Model>> models = new ArrayList<Class<? extends Model>>();
+		mSchemaCache = SchemaCache.open(configuration.getContext(), configuration.getDatabaseName());
+
+		if (!loadModelFromMetaData(configuration, models) && !loadModelFromRegistry(configuration, models)
+				&& !loadModelFromSchemaCache(configuration, models)) {
+			mScannedModels = new ArrayList<String>();
+			mScannedSerializers = new ArrayList<String>();
 			try {
-				scanForModel(configuration.getContext());
+				scanForModel(configuration.getContext(), models);
 			}
 			catch (IOException e) {
 				Log.e("Couldn't open source path.", e);
 			}
 		}
 
+		// Tables are built on first use, which reflects over their columns, so startup only pays
+		// for the models it touches. Nothing else changes after initialization, so lookups can be
+		// read from any thread without locking once Cache has published this instance.
+		mModelClasses = Collections.unmodifiableSet(new LinkedHashSet<Class<? extends Model>>(models));
+		mTypeSerializers = Collections.unmodifiableMap(mTypeSerializers);
+
 		Log.i("ModelInfo loaded.");
 	}
 
@@ -74,54 +110,189 @@ final class ModelInfo {
 	// PUBLIC METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
+	public Set<Class<? extends Model>> getModelClasses() {
+		return mModelClasses;
+	}
+
+	/**
+	 * Builds the tables that haven't been used yet, for schema changes that need all of them.
+	 */
 	public Collection<TableInfo> getTableInfos() {
-		return mTableInfos.values();
+		Collection<TableInfo> tableInfos = mAllTableInfos;
+		if (tableInfos == null) {
+			final List<TableInfo> list = new ArrayList<TableInfo>(mModelClasses.size());
+			for (Class<? extends Model> type : mModelClasses) {
+				list.add(getTableInfo(type));
+			}
+			tableInfos = Collections.unmodifiableList(list);
+			mAllTableInfos = tableInfos;
+		}
+
+		return tableInfos;
 	}
 
+	/**
+	 * @return The table of a registered model, built on the first call, or null if the model
+	 * isn't registered.
+	 */
 	public TableInfo getTableInfo(Class<? extends Model> type) {
-		return mTableInfos.get(type);
+		TableInfo tableInfo = mTableInfos.get(type);
+		if (tableInfo == null && mModelClasses.contains(type)) {
+			// Threads racing to build the same table keep whichever was stored first.
+			final TableInfo created = createTableInfo(type);
+			tableInfo = mTableInfos.putIfAbsent(type, created);
+			if (tableInfo == null) {
+				tableInfo = created;
+			}
+		}
+
+		return tableInfo;
 	}
 
 	public TypeSerializer getTypeSerializer(Class<?> type) {
 		return mTypeSerializers.get(type);
 	}
 
+	/**
+	 * Writes the schema cache in the background if it doesn't cover the models found and the
+	 * tables built so far, so that the next start can skip resolving them. Tables built later are
+	 * written as they're built.
+	 */
+	public void saveSchemaCache() {
+		if (mSchemaCache.isStale(mTableInfos.keySet(), mScannedModels != null)) {
+			scheduleSchemaCacheWrite();
+		}
+	}
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE METHODS
 	//////////////////////////////////////////////////////////////////////////////////////
 
-	private boolean loadModelFromMetaData(Configuration configuration) {
+	private TableInfo createTableInfo(Class<? extends Model> type) {
+		final SchemaCache.TableLayout layout = mSchemaCache.getLayout(type);
+		if (layout != null) {
+			try {
+				return new TableInfo(type, layout, mTypeSerializers);
+			}
+			catch (NoSuchFieldException e) {
+				Log.w("Cached layout of " + type.getName() + " is out of date.", e);
+			}
+		}
+
+		scheduleSchemaCacheWrite();
+		return new TableInfo(type, mTypeSerializers);
+	}
+
+	// Only the tables built so far are written, the file keeps those of earlier starts, so no
+	// table is built just for the cache. Tables built while a write waits are part of it.
+	private void scheduleSchemaCacheWrite() {
+		if (!mSchemaCacheWritePending.compareAndSet(false, true)) {
+			return;
+		}
+
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				SystemClock.sleep(SCHEMA_CACHE_WRITE_DELAY);
+				mSchemaCacheWritePending.set(false);
+				mSchemaCache.write(new ArrayList<TableInfo>(mTableInfos.values()), mScannedModels,
+						mScannedSerializers);
+			}
+		}, "ActiveAndroid-SchemaCache");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	private boolean loadModelFromMetaData(Configuration configuration, List<Class<? extends Model>> models) {
 		if (!configuration.isValid()) {
 			return false;
 		}
 
-		final List<Class<? extends Model>> models = configuration.getModelClasses();
-		if (models != null) {
-			for (Class<? extends Model> model : models) {
-				mTableInfos.put(model, new TableInfo(model));
-			}
+		final List<Class<? extends Model>> modelClasses = configuration.getModelClasses();
+		if (modelClasses != null) {
+			models.addAll(modelClasses);
 		}
 
 		final List<Class<? extends TypeSerializer>> typeSerializers = configuration.getTypeSerializers();
 		if (typeSerializers != null) {
-			for (Class<? extends TypeSerializer> typeSerializer : typeSerializers) {
-				try {
-					TypeSerializer instance = typeSerializer.newInstance();
-					mTypeSerializers.put(instance.getDeserializedType(), instance);
-				}
-				catch (InstantiationException e) {
-					Log.e("Couldn't instantiate TypeSerializer.", e);
-				}
-				catch (IllegalAccessException e) {
-					Log.e("IllegalAccessException", e);
-				}
+			addTypeSerializers(typeSerializers);
+		}
+
+		return true;
+	}
+
+	private boolean loadModelFromRegistry(Configuration configuration, List<Class<? extends Model>> models) {
+		final List<ModelRegistry> registries = ModelRegistry.loadAll(configuration.getContext().getClassLoader());
+		if (registries.isEmpty()) {
+			return false;
+		}
+
+		// Scanning the APK also finds the serializers that ship with the library.
+		addTypeSerializers(Arrays.<Class<? extends TypeSerializer>>asList(
+				BigDecimalSerializer.class, UUIDSerializer.class));
+
+		for (ModelRegistry registry : registries) {
+			models.addAll(registry.getModelClasses());
+			addTypeSerializers(registry.getTypeSerializers());
+		}
+
+		Log.i("Models loaded from " + registries.size() + " generated registries.");
+		return true;
+	}
+
+	// The models found by the last scan, which is by far the slowest way to find them.
+	private boolean loadModelFromSchemaCache(Configuration configuration, List<Class<? extends Model>> models) {
+		final List<String> modelNames = mSchemaCache.getScannedModels();
+		if (modelNames == null) {
+			return false;
+		}
+
+		final ClassLoader classLoader = configuration.getContext().getClassLoader();
+		final List<Class<? extends Model>> modelClasses = new ArrayList<Class<? extends Model>>(modelNames.size());
+		final List<Class<? extends TypeSerializer>> typeSerializers = new ArrayList<Class<? extends TypeSerializer>>();
+		try {
+			for (String name : modelNames) {
+				modelClasses.add(Class.forName(name, false, classLoader).asSubclass(Model.class));
 			}
+			for (String name : mSchemaCache.getScannedSerializers()) {
+				typeSerializers.add(Class.forName(name, false, classLoader).asSubclass(TypeSerializer.class));
+			}
+		}
+		catch (ClassNotFoundException e) {
+			Log.w("Cached models are out of date, scanning again.", e);
+			return false;
+		}
+		catch (ClassCastException e) {
+			Log.w("Cached models are out of date, scanning again.", e);
+			return false;
 		}
 
+		models.addAll(modelClasses);
+		addTypeSerializers(typeSerializers);
+		mScannedModels = modelNames;
+		mScannedSerializers = mSchemaCache.getScannedSerializers();
+
+		Log.i("Models loaded from the schema cache.");
 		return true;
 	}
 
-	private void scanForModel(Context context) throws IOException {
+	private void addTypeSerializers(List<Class<? extends TypeSerializer>> typeSerializers) {
+		for (Class<? extends TypeSerializer> typeSerializer : typeSerializers) {
+			try {
+				TypeSerializer instance = typeSerializer.newInstance();
+				mTypeSerializers.put(instance.getDeserializedType(), instance);
+			}
+			catch (InstantiationException e) {
+				Log.e("Couldn't instantiate TypeSerializer.", e);
+			}
+			catch (IllegalAccessException e) {
+				Log.e("IllegalAccessException", e);
+			}
+		}
+	}
+
+	private void scanForModel(Context context, List<Class<? extends Model>> models) throws IOException {
 		String packageName = context.getPackageName();
 		String sourcePath = context.getApplicationInfo().sourceDir;
 		List<String> paths = new ArrayList<String>();
@@ -149,14 +320,15 @@ final class ModelInfo {
 
 		for (String path : paths) {
 			File file = new File(path);
-			scanForModelClasses(file, packageName, context.getClassLoader());
+			scanForModelClasses(file, packageName, context.getClassLoader(), models);
 		}
 	}
 
-	private void scanForModelClasses(File path, String packageName, ClassLoader classLoader) {
+	private void scanForModelClasses(File path, String packageName, ClassLoader classLoader,
+			List<Class<? extends Model>> models) {
 		if (path.isDirectory()) {
 			for (File file : path.listFiles()) {
-				scanForModelClasses(file, packageName, classLoader);
+				scanForModelClasses(file, packageName, classLoader, models);
 			}
 		}
 		else {
@@ -188,11 +360,13 @@ final class ModelInfo {
 				if (ReflectionUtils.isModel(discoveredClass)) {
 					@SuppressWarnings("unchecked")
 					Class<? extends Model> modelClass = (Class<? extends Model>) discoveredClass;
-					mTableInfos.put(modelClass, new TableInfo(modelClass));
+					models.add(modelClass);
+					mScannedModels.add(className);
 				}
 				else if (ReflectionUtils.isTypeSerializer(discoveredClass)) {
 					TypeSerializer instance = (TypeSerializer) discoveredClass.newInstance();
 					mTypeSerializers.put(instance.getDeserializedType(), instance);
+					mScannedSerializers.add(className);
 				}
 			}
 			catch (ClassNotFoundException e) {
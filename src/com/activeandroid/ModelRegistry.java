@@ -0,0 +1,87 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Lists the models and type serializers of an app, so that they don't have to be found by
+ * scanning the classes of the APK on startup.
+ * <p>
+ * Implementations are generated at compile time by the ActiveAndroid annotation processor, one
+ * per module, listing the models and serializers compiled with it. Each is named after a hash of
+ * its contents and declared in <code>META-INF/services</code>, so the registries of library modules
+ * don't clash with the app's and are all found by {@link #loadAll(ClassLoader)}.
+ * <p>
+ * Every module with models has to run the processor. The APK is only scanned when no registry is
+ * found, so models of a module that doesn't run it are missing unless they are set with
+ * <code>AA_MODELS</code>, which takes precedence over the registries.
+ */
+public abstract class ModelRegistry {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return The registries of every module, empty if none was generated.
+	 */
+	public static List<ModelRegistry> loadAll(ClassLoader classLoader) {
+		final List<ModelRegistry> registries = new ArrayList<ModelRegistry>();
+		final Iterator<ModelRegistry> iterator = ServiceLoader.load(ModelRegistry.class, classLoader).iterator();
+		while (true) {
+			try {
+				if (!iterator.hasNext()) {
+					break;
+				}
+				registries.add(iterator.next());
+			}
+			catch (ServiceConfigurationError e) {
+				Log.e("Couldn't load a ModelRegistry.", e);
+			}
+		}
+
+		return registries;
+	}
+
+	public abstract List<Class<? extends Model>> getModelClasses();
+
+	public abstract List<Class<? extends TypeSerializer>> getTypeSerializers();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PROTECTED METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Loads the classes that generated code can't name, such as private nested models.
+	 */
+	@SuppressWarnings("unchecked")
+	protected final <T> Class<? extends T> loadClass(String name) {
+		try {
+			return (Class<? extends T>) Class.forName(name, false, getClass().getClassLoader());
+		}
+		catch (ClassNotFoundException e) {
+			throw new RuntimeException("Registered class " + name + " is missing.", e);
+		}
+	}
+}
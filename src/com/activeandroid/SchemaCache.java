@@ -0,0 +1,334 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.activeandroid.util.IOUtils;
+import com.activeandroid.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the model metadata resolved by reflection in a small binary file, so that warm starts
+ * don't have to read annotations or scan the APK again.
+ * <p>
+ * The file is keyed by the version code and modification time of the APK, and is ignored and
+ * rewritten when either changes. It holds the column layout of every table, and the models and
+ * serializers found by the last scan, if the app relies on scanning.
+ */
+final class SchemaCache {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int MAGIC = 0x41415343;
+	private static final int FORMAT_VERSION = 1;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final File mFile;
+	private final int mVersionCode;
+	private final long mApkModified;
+
+	private final boolean mValid;
+	private final Map<String, TableLayout> mLayouts;
+	private final List<String> mScannedModels;
+	private final List<String> mScannedSerializers;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private SchemaCache(File file, int versionCode, long apkModified, boolean valid,
+			Map<String, TableLayout> layouts, List<String> scannedModels, List<String> scannedSerializers) {
+		mFile = file;
+		mVersionCode = versionCode;
+		mApkModified = apkModified;
+		mValid = valid;
+		mLayouts = layouts;
+		mScannedModels = scannedModels;
+		mScannedSerializers = scannedSerializers;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the cache of <code>databaseName</code>. The cache is empty if the file is missing,
+	 * unreadable, or was written by another build of the app.
+	 */
+	static SchemaCache open(Context context, String databaseName) {
+		final File file = new File(context.getCacheDir(), "ActiveAndroid-" + databaseName + ".schema");
+
+		int versionCode = 0;
+		try {
+			versionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+		}
+		catch (PackageManager.NameNotFoundException e) {
+			Log.e("Couldn't read the version of the app.", e);
+		}
+
+		// Debug builds keep their version code, so the APK itself has to be part of the key.
+		final String sourceDir = context.getApplicationInfo().sourceDir;
+		final long apkModified = sourceDir != null ? new File(sourceDir).lastModified() : 0;
+
+		if (!file.exists()) {
+			return empty(file, versionCode, apkModified);
+		}
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION
+					|| input.readInt() != versionCode || input.readLong() != apkModified) {
+				return empty(file, versionCode, apkModified);
+			}
+
+			final int tableCount = input.readInt();
+			final Map<String, TableLayout> layouts = new HashMap<String, TableLayout>(tableCount * 2);
+			for (int i = 0; i < tableCount; i++) {
+				final TableLayout layout = TableLayout.read(input);
+				layouts.put(layout.mType, layout);
+			}
+
+			final List<String> scannedModels = input.readBoolean() ? readStrings(input) : null;
+			final List<String> scannedSerializers = scannedModels != null ? readStrings(input) : null;
+
+			return new SchemaCache(file, versionCode, apkModified, true, layouts, scannedModels, scannedSerializers);
+		}
+		catch (IOException e) {
+			Log.w("Couldn't read the schema cache, it will be rebuilt.", e);
+			return empty(file, versionCode, apkModified);
+		}
+		finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * @return The column layout of <code>type</code>, or null if it isn't cached.
+	 */
+	TableLayout getLayout(Class<? extends Model> type) {
+		return mValid ? mLayouts.get(type.getName()) : null;
+	}
+
+	/**
+	 * @return The names of the models found by the last scan, or null if the app didn't scan.
+	 */
+	List<String> getScannedModels() {
+		return mValid ? mScannedModels : null;
+	}
+
+	List<String> getScannedSerializers() {
+		return mValid ? mScannedSerializers : null;
+	}
+
+	/**
+	 * @return Whether the file has to be written for the cache to cover every one of
+	 * <code>types</code>, and the scanned models if <code>scanned</code>.
+	 */
+	boolean isStale(Collection<Class<? extends Model>> types, boolean scanned) {
+		if (!mValid || (scanned && mScannedModels == null)) {
+			return true;
+		}
+
+		for (Class<? extends Model> type : types) {
+			if (!mLayouts.containsKey(type.getName())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes the layouts of <code>tableInfos</code>, keeping those of other tables already in the
+	 * file. The file is replaced in one rename, so a reader never sees it half written.
+	 *
+	 * @param scannedModels The models found by scanning, or null if the app didn't scan.
+	 */
+	synchronized void write(Collection<TableInfo> tableInfos, List<String> scannedModels, List<String> scannedSerializers) {
+		final Map<String, TableLayout> layouts = new HashMap<String, TableLayout>();
+		if (mValid) {
+			layouts.putAll(mLayouts);
+		}
+		for (TableInfo tableInfo : tableInfos) {
+			layouts.put(tableInfo.getType().getName(), TableLayout.of(tableInfo));
+		}
+		if (scannedModels == null && mValid) {
+			scannedModels = mScannedModels;
+			scannedSerializers = mScannedSerializers;
+		}
+
+		final File temp = new File(mFile.getPath() + ".tmp");
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(mVersionCode);
+			output.writeLong(mApkModified);
+
+			output.writeInt(layouts.size());
+			for (TableLayout layout : layouts.values()) {
+				layout.write(output);
+			}
+
+			output.writeBoolean(scannedModels != null);
+			if (scannedModels != null) {
+				writeStrings(output, scannedModels);
+				writeStrings(output, scannedSerializers);
+			}
+
+			output.close();
+			output = null;
+
+			if (!temp.renameTo(mFile)) {
+				throw new IOException("Couldn't rename " + temp + ".");
+			}
+		}
+		catch (IOException e) {
+			Log.w("Couldn't write the schema cache.", e);
+			temp.delete();
+		}
+		finally {
+			IOUtils.closeQuietly(output);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static SchemaCache empty(File file, int versionCode, long apkModified) {
+		return new SchemaCache(file, versionCode, apkModified, false,
+				Collections.<String, TableLayout>emptyMap(), null, null);
+	}
+
+	private static List<String> readStrings(DataInputStream input) throws IOException {
+		final int count = input.readInt();
+		final List<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			strings.add(input.readUTF());
+		}
+
+		return strings;
+	}
+
+	private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException {
+		output.writeInt(strings.size());
+		for (String string : strings) {
+			output.writeUTF(string);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The resolved table and column names of a model, and the fields they map to.
+	 */
+	static final class TableLayout {
+		final String mType;
+		final String mTableName;
+		final String mIdName;
+		final int mCacheBudget;
+
+		// Parallel arrays, starting with the id column.
+		final String[] mDeclaringTypes;
+		final String[] mFieldNames;
+		final String[] mColumnNames;
+
+		private TableLayout(String type, String tableName, String idName, int cacheBudget,
+				String[] declaringTypes, String[] fieldNames, String[] columnNames) {
+			mType = type;
+			mTableName = tableName;
+			mIdName = idName;
+			mCacheBudget = cacheBudget;
+			mDeclaringTypes = declaringTypes;
+			mFieldNames = fieldNames;
+			mColumnNames = columnNames;
+		}
+
+		static TableLayout of(TableInfo tableInfo) {
+			final ColumnInfo[] columns = tableInfo.getColumns();
+			final String[] declaringTypes = new String[columns.length];
+			final String[] fieldNames = new String[columns.length];
+			final String[] columnNames = new String[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				declaringTypes[i] = columns[i].getField().getDeclaringClass().getName();
+				fieldNames[i] = columns[i].getField().getName();
+				columnNames[i] = columns[i].getName();
+			}
+
+			return new TableLayout(tableInfo.getType().getName(), tableInfo.getTableName(),
+					tableInfo.getIdName(), tableInfo.getCacheBudget(), declaringTypes, fieldNames, columnNames);
+		}
+
+		static TableLayout read(DataInputStream input) throws IOException {
+			final String type = input.readUTF();
+			final String tableName = input.readUTF();
+			final String idName = input.readUTF();
+			final int cacheBudget = input.readInt();
+
+			final int columnCount = input.readInt();
+			final String[] declaringTypes = new String[columnCount];
+			final String[] fieldNames = new String[columnCount];
+			final String[] columnNames = new String[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				declaringTypes[i] = input.readUTF();
+				fieldNames[i] = input.readUTF();
+				columnNames[i] = input.readUTF();
+			}
+
+			return new TableLayout(type, tableName, idName, cacheBudget, declaringTypes, fieldNames, columnNames);
+		}
+
+		void write(DataOutputStream output) throws IOException {
+			output.writeUTF(mType);
+			output.writeUTF(mTableName);
+			output.writeUTF(mIdName);
+			output.writeInt(mCacheBudget);
+
+			output.writeInt(mColumnNames.length);
+			for (int i = 0; i < mColumnNames.length; i++) {
+				output.writeUTF(mDeclaringTypes[i]);
+				output.writeUTF(mFieldNames[i]);
+				output.writeUTF(mColumnNames[i]);
+			}
+		}
+	}
+}
@@ -17,21 +17,39 @@ package com.activeandroid;
  */
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.text.TextUtils;
-import android.util.Log;
 
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.Log;
 import com.activeandroid.util.ReflectionUtils;
 
 public final class TableInfo {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Queries are built from a handful of shapes per model, stop caching if that doesn't hold.
+	private static final int MAX_COLUMN_PLANS = 32;
+
+	// Approximate sizes on the heap, used to estimate the memory of cached entities.
+	private static final int OBJECT_SIZE = 8;
+	private static final int REFERENCE_SIZE = 4;
+	private static final int BOXED_SIZE = 16;
+	private static final int ARRAY_SIZE = 16;
+	private static final int STRING_SIZE = 40;
+
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PRIVATE MEMBERS
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -41,12 +59,33 @@ public final class TableInfo {
 	private String mIdName = Table.DEFAULT_ID_NAME;
 
 	private Map<Field, String> mColumnNames = new LinkedHashMap<Field, String>();
+	private ColumnInfo[] mColumns;
+
+	private int mCacheBudget;
+	private int mFixedSize;
+	private ColumnInfo[] mVariableSizeColumns;
+
+	private final Map<List<String>, int[]> mColumnPlans = new ConcurrentHashMap<List<String>, int[]>();
+
+	private String mInsertSql;
+	private String mUpdateSql;
+
+	private volatile ModelBinder<?> mBinder;
+	private volatile boolean mBinderResolved = false;
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	public TableInfo(Class<? extends Model> type) {
+		this(type, null);
+	}
+
+	/**
+	 * @param typeSerializers The serializers to resolve columns with, or null to look them up
+	 * through {@link Cache}.
+	 */
+	TableInfo(Class<? extends Model> type, Map<Class<?>, TypeSerializer> typeSerializers) {
 		mType = type;
 
 		final Table tableAnnotation = type.getAnnotation(Table.class);
@@ -54,6 +93,7 @@ public final class TableInfo {
         if (tableAnnotation != null) {
 			mTableName = tableAnnotation.name();
 			mIdName = tableAnnotation.id();
+			mCacheBudget = tableAnnotation.cacheBudget();
 		}
 		else {
 			mTableName = type.getSimpleName();
@@ -78,6 +118,33 @@ public final class TableInfo {
             }
         }
 
+		initColumns(typeSerializers);
+	}
+
+	/**
+	 * Restores a table from the layout cached by an earlier run, which skips reading the
+	 * annotations of the model and its fields.
+	 *
+	 * @throws NoSuchFieldException If the model no longer has a field of the layout, in which case
+	 * the table has to be resolved again.
+	 */
+	TableInfo(Class<? extends Model> type, SchemaCache.TableLayout layout,
+			Map<Class<?>, TypeSerializer> typeSerializers) throws NoSuchFieldException {
+		mType = type;
+		mTableName = layout.mTableName;
+		mIdName = layout.mIdName;
+		mCacheBudget = layout.mCacheBudget;
+
+		for (int i = 0; i < layout.mColumnNames.length; i++) {
+			final Class<?> declaringType = getDeclaringType(type, layout.mDeclaringTypes[i]);
+			if (declaringType == null) {
+				throw new NoSuchFieldException(layout.mDeclaringTypes[i] + "." + layout.mFieldNames[i]);
+			}
+
+			mColumnNames.put(declaringType.getDeclaredField(layout.mFieldNames[i]), layout.mColumnNames[i]);
+		}
+
+		initColumns(typeSerializers);
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -104,6 +171,288 @@ public final class TableInfo {
 		return mColumnNames.get(field);
 	}
 
+	/**
+	 * @return The resolved columns, in the same order as {@link #getFields()}. The first column
+	 * is always the id.
+	 */
+	public ColumnInfo[] getColumns() {
+		return mColumns;
+	}
+
+	/**
+	 * @return The generated binder for this model, or null if there is none and the reflective
+	 * path has to be used.
+	 */
+	public ModelBinder<?> getBinder() {
+		if (!mBinderResolved) {
+			mBinder = loadBinder();
+			mBinderResolved = true;
+		}
+
+		return mBinder;
+	}
+
+	/**
+	 * Maps every column to its index in a cursor with the given column names. The plan is cached
+	 * per column signature, so this is computed once per query shape rather than once per row.
+	 * <p>
+	 * When a name occurs more than once, as it does for joins, the first occurrence is used to fix
+	 * issue #106 (https://github.com/pardom/ActiveAndroid/issues/106).
+	 *
+	 * @return The cursor index of each column in {@link #getColumns()}, or -1 if the cursor does
+	 * not contain it. The returned array is shared and must not be modified.
+	 */
+	public int[] getColumnIndexes(String[] cursorColumnNames) {
+		final List<String> signature = Arrays.asList(cursorColumnNames);
+		int[] columnIndexes = mColumnPlans.get(signature);
+		if (columnIndexes == null) {
+			columnIndexes = createColumnIndexes(cursorColumnNames);
+			if (mColumnPlans.size() < MAX_COLUMN_PLANS) {
+				mColumnPlans.put(new ArrayList<String>(signature), columnIndexes);
+			}
+		}
+
+		return columnIndexes;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return The most memory in bytes that cached entities of this table may use, or 0 if only
+	 * the size of the whole cache applies.
+	 * @see Table#cacheBudget()
+	 */
+	int getCacheBudget() {
+		return mCacheBudget;
+	}
+
+	/**
+	 * Estimates the memory used by an entity of this table. The part that only depends on the
+	 * column layout is computed once, so only the lengths of strings and arrays are read here.
+	 * Related models and enums are shared with other entities and aren't counted.
+	 */
+	int sizeOf(Model entity) {
+		int size = mFixedSize;
+		for (ColumnInfo column : mVariableSizeColumns) {
+			try {
+				size += sizeOfValue(column.getField().get(entity));
+			}
+			catch (IllegalAccessException e) {
+				Log.e("IllegalAccessException", e);
+			}
+		}
+
+		// Objects are aligned to 8 bytes.
+		return (size + 7) & ~7;
+	}
+
+	/**
+	 * @return An INSERT with one parameter per column, in the order of {@link #getColumns()}.
+	 */
+	String getInsertSql() {
+		if (mInsertSql == null) {
+			final String[] names = new String[mColumns.length];
+			final String[] parameters = new String[mColumns.length];
+			for (int i = 0; i < mColumns.length; i++) {
+				names[i] = mColumns[i].getName();
+				parameters[i] = "?";
+			}
+
+			mInsertSql = String.format("INSERT INTO %s (%s) VALUES (%s)", mTableName,
+					TextUtils.join(", ", names), TextUtils.join(", ", parameters));
+		}
+
+		return mInsertSql;
+	}
+
+	/**
+	 * @return An UPDATE with one parameter per column, in the order of {@link #getColumns()},
+	 * followed by the id of the row to update.
+	 */
+	String getUpdateSql() {
+		if (mUpdateSql == null) {
+			final String[] assignments = new String[mColumns.length];
+			for (int i = 0; i < mColumns.length; i++) {
+				assignments[i] = mColumns[i].getName() + "=?";
+			}
+
+			mUpdateSql = String.format("UPDATE %s SET %s WHERE %s=?", mTableName,
+					TextUtils.join(", ", assignments), mIdName);
+		}
+
+		return mUpdateSql;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private void initColumns(Map<Class<?>, TypeSerializer> typeSerializers) {
+		mColumns = new ColumnInfo[mColumnNames.size()];
+		int i = 0;
+		for (Map.Entry<Field, String> entry : mColumnNames.entrySet()) {
+			final Class<?> fieldType = entry.getKey().getType();
+			final TypeSerializer typeSerializer = typeSerializers != null
+					? typeSerializers.get(fieldType) : Cache.getParserForType(fieldType);
+			mColumns[i++] = new ColumnInfo(entry.getKey(), entry.getValue(), typeSerializer);
+		}
+
+		// The model itself holds its header and references to this table and the id name, and the
+		// snapshot of its columns, whose values are shared with the fields.
+		mFixedSize = OBJECT_SIZE + 4 * REFERENCE_SIZE + 2 * ARRAY_SIZE + 8 * Model.getSnapshotLength(mColumns.length)
+				+ REFERENCE_SIZE * mColumns.length;
+		final List<ColumnInfo> variableSizeColumns = new ArrayList<ColumnInfo>();
+		for (ColumnInfo column : mColumns) {
+			mFixedSize += getFixedSize(column);
+			if (isVariableSize(column)) {
+				variableSizeColumns.add(column);
+			}
+		}
+		mVariableSizeColumns = variableSizeColumns.toArray(new ColumnInfo[variableSizeColumns.size()]);
+	}
+
+	private static Class<?> getDeclaringType(Class<?> type, String name) {
+		while (type != null) {
+			if (type.getName().equals(name)) {
+				return type;
+			}
+			type = type.getSuperclass();
+		}
+
+		return null;
+	}
+
+	private int[] createColumnIndexes(String[] cursorColumnNames) {
+		final int[] columnIndexes = new int[mColumns.length];
+		for (int i = 0; i < mColumns.length; i++) {
+			final String name = mColumns[i].getName();
+			columnIndexes[i] = -1;
+			for (int j = 0; j < cursorColumnNames.length; j++) {
+				if (name.equals(cursorColumnNames[j])) {
+					columnIndexes[i] = j;
+					break;
+				}
+			}
+		}
+
+		return columnIndexes;
+	}
+
+	private static int getFixedSize(ColumnInfo column) {
+		if (column.getField().getType().isPrimitive()) {
+			switch (column.getType()) {
+			case BYTE:
+			case BOOLEAN:
+				return 1;
+			case SHORT:
+			case CHARACTER:
+				return 2;
+			case LONG:
+			case DOUBLE:
+				return 8;
+			default:
+				return 4;
+			}
+		}
+
+		switch (column.getType()) {
+		case BYTE:
+		case SHORT:
+		case INTEGER:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+		case BOOLEAN:
+		case CHARACTER:
+			return REFERENCE_SIZE + BOXED_SIZE;
+		default:
+			return REFERENCE_SIZE;
+		}
+	}
+
+	private static boolean isVariableSize(ColumnInfo column) {
+		switch (column.getType()) {
+		case STRING:
+		case BLOB:
+		case BYTE_ARRAY:
+		case SERIALIZED:
+		case UNKNOWN:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static int sizeOfValue(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		else if (value instanceof String) {
+			return STRING_SIZE + 2 * ((String) value).length();
+		}
+		else if (value instanceof byte[]) {
+			return ARRAY_SIZE + ((byte[]) value).length;
+		}
+		else if (value instanceof Object[]) {
+			// Boxed bytes are shared instances, only the references count.
+			return ARRAY_SIZE + REFERENCE_SIZE * ((Object[]) value).length;
+		}
+
+		// Serialized values such as dates, whose size we can't know without reflection.
+		return BOXED_SIZE;
+	}
+
+	private ModelBinder<?> loadBinder() {
+		final ModelBinder<?> binder;
+		try {
+			final Class<?> binderType = Class.forName(mType.getName() + ModelBinder.SUFFIX, true,
+					mType.getClassLoader());
+			binder = (ModelBinder<?>) binderType.newInstance();
+		}
+		catch (ClassNotFoundException e) {
+			return null;
+		}
+		catch (InstantiationException e) {
+			Log.e("Couldn't instantiate ModelBinder.", e);
+			return null;
+		}
+		catch (IllegalAccessException e) {
+			Log.e("IllegalAccessException", e);
+			return null;
+		}
+
+		// The binder was generated from the sources, make sure it still agrees with the runtime
+		// model and doesn't bypass a serializer registered for a type it binds directly.
+		final List<String> columnNames = new ArrayList<String>(mColumnNames.values());
+		columnNames.remove(0);
+		if (!columnNames.equals(Arrays.asList(binder.getColumnNames()))) {
+			Log.w("ModelBinder for " + mType.getName() + " is out of date, falling back to reflection.");
+			return null;
+		}
+
+		for (ColumnInfo column : mColumns) {
+			final Class<?> fieldType = column.getField().getType();
+			if (column.getTypeSerializer() != null && isBoundDirectly(fieldType)) {
+				Log.w("ModelBinder for " + mType.getName() + " bypasses the serializer for "
+						+ fieldType.getName() + ", falling back to reflection.");
+				return null;
+			}
+		}
+
+		binder.setColumns(mColumns);
+		return binder;
+	}
+
+	// Types the generated binder reads and writes without consulting a TypeSerializer.
+	private static boolean isBoundDirectly(Class<?> type) {
+		return type.isPrimitive() || type.equals(String.class) || type.equals(byte[].class)
+				|| type.equals(Byte.class) || type.equals(Short.class) || type.equals(Integer.class)
+				|| type.equals(Long.class) || type.equals(Float.class) || type.equals(Double.class)
+				|| type.equals(Boolean.class) || type.equals(Character.class)
+				|| ReflectionUtils.isModel(type) || type.isEnum();
+	}
 
     private Field getIdField(Class<?> type) {
         if (type.equals(Model.class)) {
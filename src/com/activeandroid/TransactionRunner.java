@@ -0,0 +1,155 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.activeandroid.util.Log;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs blocks of work in a transaction, see {@link ActiveAndroid#runInTransaction(Callable, int)}.
+ */
+final class TransactionRunner {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// Savepoints nest like a stack, so one name is enough for any depth.
+	private static final String SAVEPOINT = "ActiveAndroid";
+
+	// From API 16 to 27 the platform sorts statements by their first three letters, and runs
+	// anything starting with "ROL" as a rollback of the whole transaction. A leading ";" is an
+	// empty statement to SQLite but keeps the platform from recognizing the savepoint statements.
+	private static final String SAVEPOINT_SQL = ";SAVEPOINT " + SAVEPOINT;
+	private static final String RELEASE_SQL = ";RELEASE " + SAVEPOINT;
+	private static final String ROLLBACK_TO_SQL = ";ROLLBACK TO " + SAVEPOINT;
+
+	private static final long INITIAL_BACKOFF = 10;
+	private static final long MAX_BACKOFF = 1000;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private TransactionRunner() {
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	static <T> T run(Callable<T> block, int maxRetries) {
+		final SQLiteDatabase db = Cache.openDatabase();
+		if (db.inTransaction()) {
+			return runInSavepoint(db, block);
+		}
+
+		final long start = System.nanoTime();
+		long backoff = INITIAL_BACKOFF;
+		int attempts = 0;
+		boolean committed = false;
+
+		try {
+			while (true) {
+				attempts++;
+				try {
+					final T result = runInTransaction(block);
+					committed = true;
+					return result;
+				}
+				catch (SQLiteException e) {
+					if (attempts > maxRetries || !isLocked(e)) {
+						throw e;
+					}
+
+					Log.w("Database locked, retrying transaction in " + backoff + "ms.");
+					SystemClock.sleep(backoff);
+					backoff = Math.min(backoff * 2, MAX_BACKOFF);
+				}
+			}
+		}
+		finally {
+			final ActiveAndroid.TransactionListener listener = Cache.getTransactionListener();
+			if (listener != null) {
+				listener.onTransactionFinished(System.nanoTime() - start, attempts, committed);
+			}
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static <T> T runInTransaction(Callable<T> block) {
+		ActiveAndroid.beginTransaction();
+		try {
+			final T result = call(block);
+			ActiveAndroid.setTransactionSuccessful();
+			return result;
+		}
+		finally {
+			ActiveAndroid.endTransaction();
+		}
+	}
+
+	private static <T> T runInSavepoint(SQLiteDatabase db, Callable<T> block) {
+		db.execSQL(SAVEPOINT_SQL);
+
+		boolean released = false;
+		try {
+			final T result = call(block);
+			db.execSQL(RELEASE_SQL);
+			released = true;
+			return result;
+		}
+		finally {
+			if (!released) {
+				// Undoes the block only, the outer transaction carries on.
+				db.execSQL(ROLLBACK_TO_SQL);
+				db.execSQL(RELEASE_SQL);
+			}
+		}
+	}
+
+	private static <T> T call(Callable<T> block) {
+		try {
+			return block.call();
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static boolean isLocked(SQLiteException e) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			return e instanceof SQLiteDatabaseLockedException;
+		}
+
+		// Older releases only tell locks apart by the message.
+		final String message = e.getMessage();
+		return message != null && message.contains("locked");
+	}
+}
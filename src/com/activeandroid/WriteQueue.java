@@ -0,0 +1,353 @@
+package com.activeandroid;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
+
+import com.activeandroid.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Funnels writes from every thread through a single writer thread. Writes that are waiting when
+ * the writer gets to them are committed together in one transaction, so concurrent callers
+ * share the cost of a commit instead of each paying for their own.
+ * <p>
+ * Callers still block until their write is committed and get its result or exception, so
+ * {@link Model#save()} and friends behave as before. Each write runs in its own savepoint, a
+ * failing write doesn't undo the others in its group. Models saved by a write that is rolled
+ * back, on its own or with its group, lose the id of the row they inserted and leave the cache.
+ * @see Configuration.Builder#setWriteQueueEnabled(boolean)
+ */
+public final class WriteQueue {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final int MAX_GROUP_SIZE = 64;
+
+	private static final Write<Void> STOP = new Write<Void>(null);
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final BlockingQueue<Write<?>> mQueue = new LinkedBlockingQueue<Write<?>>();
+	private final Thread mThread;
+	private boolean mStopped;
+
+	// Only used by the writer thread.
+	private Write<?> mCurrentWrite;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	WriteQueue() {
+		mThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processWrites();
+			}
+		}, "ActiveAndroid-Writer");
+		mThread.setDaemon(true);
+		mThread.start();
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Runs <code>write</code> on the writer thread and waits until it's committed. Runs it on the
+	 * calling thread instead if the queue isn't enabled, or if the thread is in a transaction,
+	 * which the write has to be part of.
+	 */
+	public static <T> T run(Callable<T> write) {
+		final WriteQueue queue = Cache.getWriteQueue();
+		if (queue == null || Thread.currentThread() == queue.mThread
+				|| Cache.openDatabase().inTransaction()) {
+			return call(write);
+		}
+
+		return queue.submit(write);
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records that the write being run saved <code>model</code>, so that the save can be forgotten
+	 * if the write is rolled back. Saves made outside the writer thread are left alone.
+	 */
+	static void recordSave(Model model, boolean inserted) {
+		final WriteQueue queue = Cache.getWriteQueue();
+		if (queue != null && Thread.currentThread() == queue.mThread && queue.mCurrentWrite != null) {
+			queue.mCurrentWrite.recordSave(model, inserted);
+		}
+	}
+
+	/**
+	 * Commits the writes already queued and stops the writer thread.
+	 */
+	void shutdown() {
+		synchronized (this) {
+			if (mStopped) {
+				return;
+			}
+			mStopped = true;
+			mQueue.add(STOP);
+		}
+
+		boolean interrupted = false;
+		while (mThread.isAlive()) {
+			try {
+				mThread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private <T> T submit(Callable<T> callable) {
+		final Write<T> write = new Write<T>(callable);
+		synchronized (this) {
+			if (mStopped) {
+				return call(callable);
+			}
+			mQueue.add(write);
+		}
+
+		return write.await();
+	}
+
+	private void processWrites() {
+		final List<Write<?>> group = new ArrayList<Write<?>>(MAX_GROUP_SIZE);
+		boolean stopped = false;
+
+		while (!stopped) {
+			try {
+				group.add(mQueue.take());
+			}
+			catch (InterruptedException e) {
+				continue;
+			}
+			mQueue.drainTo(group, MAX_GROUP_SIZE - 1);
+
+			// Nothing is queued after the stop, so everything before it is in this group or done.
+			stopped = group.remove(STOP);
+			if (!group.isEmpty()) {
+				commit(group);
+			}
+			group.clear();
+		}
+	}
+
+	private void commit(List<Write<?>> group) {
+		final GroupListener listener = new GroupListener();
+		RuntimeException failure = null;
+
+		try {
+			final SQLiteDatabase db = Cache.openDatabase();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ECLAIR) {
+				db.beginTransactionWithListener(listener);
+			}
+			else {
+				db.beginTransaction();
+			}
+			ChangeNotifier.beginTransaction();
+
+			boolean committed = false;
+			try {
+				for (Write<?> write : group) {
+					mCurrentWrite = write;
+					write.runInSavepoint();
+				}
+				db.setTransactionSuccessful();
+				ChangeNotifier.setTransactionSuccessful();
+			}
+			finally {
+				mCurrentWrite = null;
+				try {
+					db.endTransaction();
+					committed = !listener.mRolledBack;
+				}
+				finally {
+					ChangeNotifier.endTransaction(committed);
+				}
+			}
+
+			// A write that ends a nested transaction without success rolls back the group quietly.
+			if (!committed) {
+				throw new SQLiteException("A nested transaction failed, so the group was rolled back.");
+			}
+		}
+		catch (RuntimeException e) {
+			Log.e("Failed to commit " + group.size() + " writes.", e);
+			failure = e;
+		}
+
+		for (Write<?> write : group) {
+			if (failure != null) {
+				write.rollBackSaves();
+			}
+			write.complete(failure);
+		}
+	}
+
+	private static <T> T call(Callable<T> write) {
+		try {
+			return write.call();
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private static final class Write<T> {
+		private final Callable<T> mCallable;
+		private final CountDownLatch mDone = new CountDownLatch(1);
+
+		private T mResult;
+		private Throwable mError;
+
+		private List<Model> mSavedModels;
+		private List<Boolean> mInserted;
+
+		public Write(Callable<T> callable) {
+			mCallable = callable;
+		}
+
+		public void runInSavepoint() {
+			try {
+				mResult = TransactionRunner.run(mCallable, 0);
+			}
+			catch (RuntimeException e) {
+				mError = e;
+			}
+			catch (Error e) {
+				mError = e;
+			}
+
+			// The savepoint was rolled back along with what the write saved.
+			if (mError != null) {
+				rollBackSaves();
+			}
+		}
+
+		public void recordSave(Model model, boolean inserted) {
+			if (mSavedModels == null) {
+				mSavedModels = new ArrayList<Model>();
+				mInserted = new ArrayList<Boolean>();
+			}
+			mSavedModels.add(model);
+			mInserted.add(inserted);
+		}
+
+		public void rollBackSaves() {
+			if (mSavedModels == null) {
+				return;
+			}
+
+			// Undone in reverse, so that a model updated after its insert is evicted by its id.
+			for (int i = mSavedModels.size() - 1; i >= 0; i--) {
+				mSavedModels.get(i).rollBackSave(mInserted.get(i));
+			}
+			mSavedModels = null;
+			mInserted = null;
+		}
+
+		/**
+		 * @param failure The error that kept the group from committing, if any.
+		 */
+		public void complete(RuntimeException failure) {
+			if (failure != null) {
+				mResult = null;
+				mError = failure;
+			}
+			mDone.countDown();
+		}
+
+		public T await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					mDone.await();
+					break;
+				}
+				catch (InterruptedException e) {
+					// The write can't be taken back, so wait for it anyway.
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+
+			if (mError instanceof RuntimeException) {
+				throw (RuntimeException) mError;
+			}
+			if (mError instanceof Error) {
+				throw (Error) mError;
+			}
+			return mResult;
+		}
+	}
+
+	private static final class GroupListener implements SQLiteTransactionListener {
+		private boolean mRolledBack;
+
+		@Override
+		public void onBegin() {
+		}
+
+		@Override
+		public void onCommit() {
+		}
+
+		@Override
+		public void onRollback() {
+			mRolledBack = true;
+		}
+	}
+}
@@ -28,4 +28,11 @@ public @interface Table {
 	public static final String DEFAULT_ID_NAME = "Id";
 	public String name();
 	public String id() default DEFAULT_ID_NAME;
+
+	/**
+	 * The most memory in bytes that cached entities of this table may use, or 0 for no limit
+	 * besides the size of the whole cache. Only applies when the cache is sized in bytes, see
+	 * {@link com.activeandroid.Configuration.Builder#setCacheMaxBytes(int)}.
+	 */
+	public int cacheBudget() default 0;
 }
@@ -2,6 +2,8 @@ package com.activeandroid.content;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.content.ContentValues;
 import android.content.UriMatcher;
@@ -29,6 +31,7 @@ public class ContentProvider extends android.content.ContentProvider {
 
 	private static String sAuthority;
 	private static SparseArray<String> sMimeTypeCache = new SparseArray<String>();
+	private static Map<Class<? extends Model>, Uri> sTableUris = new ConcurrentHashMap<Class<? extends Model>, Uri>();
 
 	//////////////////////////////////////////////////////////////////////////////////////
 	// PUBLIC METHODS
@@ -38,6 +41,7 @@ public class ContentProvider extends android.content.ContentProvider {
 	public boolean onCreate() {
 		ActiveAndroid.initialize(getConfiguration());
 		sAuthority = getAuthority();
+		sTableUris.clear();
 
 		final List<TableInfo> tableInfos = new ArrayList<TableInfo>(Cache.getTableInfos());
 		final int size = tableInfos.size();
@@ -147,18 +151,18 @@ public class ContentProvider extends android.content.ContentProvider {
 	//////////////////////////////////////////////////////////////////////////////////////
 
 	public static Uri createUri(Class<? extends Model> type, Long id) {
-		final StringBuilder uri = new StringBuilder();
-		uri.append("content://");
-		uri.append(sAuthority);
-		uri.append("/");
-		uri.append(Cache.getTableName(type).toLowerCase());
-
-		if (id != null) {
-			uri.append("/");
-			uri.append(id.toString());
+		if (id == null) {
+			// Table uris are requested for every change, so they're only built once.
+			Uri uri = sTableUris.get(type);
+			if (uri == null) {
+				uri = buildUri(type, null);
+				sTableUris.put(type, uri);
+			}
+
+			return uri;
 		}
 
-		return Uri.parse(uri.toString());
+		return buildUri(type, id);
 	}
 
 	//////////////////////////////////////////////////////////////////////////////////////
@@ -186,6 +190,21 @@ public class ContentProvider extends android.content.ContentProvider {
 		return null;
 	}
 
+	private static Uri buildUri(Class<? extends Model> type, Long id) {
+		final StringBuilder uri = new StringBuilder();
+		uri.append("content://");
+		uri.append(sAuthority);
+		uri.append("/");
+		uri.append(Cache.getTableName(type).toLowerCase());
+
+		if (id != null) {
+			uri.append("/");
+			uri.append(id.toString());
+		}
+
+		return Uri.parse(uri.toString());
+	}
+
 	private void notifyChange(Uri uri) {
 		getContext().getContentResolver().notifyChange(uri, null);
 	}
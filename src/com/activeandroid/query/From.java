@@ -16,17 +16,20 @@ package com.activeandroid.query;
  * limitations under the License.
  */
 
+import android.database.Cursor;
 import android.text.TextUtils;
 
 import com.activeandroid.Cache;
 import com.activeandroid.Model;
-import com.activeandroid.content.ContentProvider;
+import com.activeandroid.WriteQueue;
 import com.activeandroid.query.Join.JoinType;
 import com.activeandroid.util.Log;
 import com.activeandroid.util.SQLiteUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public final class From implements Sqlable {
 	private Sqlable mQueryBase;
@@ -40,6 +43,8 @@ public final class From implements Sqlable {
 	private String mOrderBy;
 	private String mLimit;
 	private String mOffset;
+	private boolean mBatchRelations;
+	private List<Include> mIncludes;
 
 	private List<Object> mArguments;
 
@@ -155,6 +160,30 @@ public final class From implements Sqlable {
 		return this;
 	}
 
+	/**
+	 * Loads the models referenced by the results with one query per related type, instead of one
+	 * query per row whose relation isn't cached.
+	 * @see com.activeandroid.util.RelationBatch
+	 */
+	public From batchRelations() {
+		mBatchRelations = true;
+		return this;
+	}
+
+	/**
+	 * Loads the children of the results that refer to them through <code>foreignKey</code> with
+	 * one more query, so that {@link Model#getMany(Class, String)} doesn't run one per result.
+	 * @see Model#prefetchMany(List, Class, String)
+	 */
+	public From include(Class<? extends Model> type, String foreignKey) {
+		if (mIncludes == null) {
+			mIncludes = new ArrayList<Include>();
+		}
+
+		mIncludes.add(new Include(type, foreignKey));
+		return this;
+	}
+
 	void addArguments(Object[] args) {
         for(Object arg : args) {
             if (arg.getClass() == boolean.class || arg.getClass() == Boolean.class) {
@@ -259,6 +288,44 @@ public final class From implements Sqlable {
         return sqlString(sql);
     }
 
+    /**
+     * Builds the query for one page of a {@link Pager}. The pager's key condition is added to the
+     * where-clause, and its order and limit replace those of this query.
+     */
+    String toPageSql(String keyClause, String orderBy, int limit) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append(mQueryBase.toSql());
+
+        addFrom(sql);
+        addJoins(sql);
+
+        if (mWhere.length() > 0 && keyClause != null) {
+            sql.append("WHERE (");
+            sql.append(mWhere);
+            sql.append(") AND ");
+            sql.append(keyClause);
+            sql.append(" ");
+        }
+        else if (keyClause != null) {
+            sql.append("WHERE ");
+            sql.append(keyClause);
+            sql.append(" ");
+        }
+        else {
+            addWhere(sql);
+        }
+
+        addGroupBy(sql);
+        addHaving(sql);
+
+        sql.append("ORDER BY ");
+        sql.append(orderBy);
+        sql.append(" LIMIT ");
+        sql.append(limit);
+
+        return sqlString(sql);
+    }
+
     public String toExistsSql() {
 
         final StringBuilder sql = new StringBuilder();
@@ -295,20 +362,107 @@ public final class From implements Sqlable {
 
 	public <T extends Model> List<T> execute() {
 		if (mQueryBase instanceof Select) {
-			return SQLiteUtils.rawQuery(mType, toSql(), getArguments());
+			final List<T> entities = SQLiteUtils.rawQuery(mType, toSql(), getArguments(), mBatchRelations);
+			Include.load(mIncludes, entities);
+			return entities;
 			
 		} else {
-			SQLiteUtils.execSql(toSql(), getArguments());
-			Cache.getContext().getContentResolver().notifyChange(ContentProvider.createUri(mType, null), null);
+			final String sql = toSql();
+			final String[] arguments = getArguments();
+			WriteQueue.run(new Callable<Void>() {
+				@Override
+				public Void call() {
+					SQLiteUtils.executeUpdateDelete(sql, arguments);
+					Cache.notifyChange(mType, null);
+					return null;
+				}
+			});
 			return null;
 			
 		}
 	}
 
+	/**
+	 * Runs a select and streams the results instead of loading them all into a list.
+	 * @see ModelIterator
+	 */
+	public <T extends Model> ModelIterator<T> executeIterator() {
+		return executeIterator(false);
+	}
+
+	/**
+	 * Runs a select and streams the results instead of loading them all into a list.
+	 * @param reuseInstance <code>true</code> to load every row into the same model instance.
+	 * @see ModelIterator
+	 */
+	public <T extends Model> ModelIterator<T> executeIterator(boolean reuseInstance) {
+		if (!(mQueryBase instanceof Select)) {
+			throw new IllegalStateException("Only select queries can be iterated.");
+		}
+
+		final Cursor cursor = Cache.openDatabase().rawQuery(toSql(), getArguments());
+		return new ModelIterator<T>(mType, cursor, reuseInstance);
+	}
+
+	/**
+	 * Pages through the results on the id column with keyset pagination.
+	 * @see Pager
+	 */
+	public <T extends Model> Pager<T> pager(int pageSize) {
+		return pager(null, true, pageSize);
+	}
+
+	/**
+	 * Pages through the results on an indexed, non-null column with keyset pagination. The id
+	 * column breaks ties between rows with the same value.
+	 * @see Pager
+	 */
+	public <T extends Model> Pager<T> pager(String orderColumn, int pageSize) {
+		return pager(orderColumn, true, pageSize);
+	}
+
+	/**
+	 * Pages through the results on an indexed, non-null column with keyset pagination. The id
+	 * column breaks ties between rows with the same value.
+	 * @param orderColumn The column to page on, or null to page on the id column.
+	 * @see Pager
+	 */
+	public <T extends Model> Pager<T> pager(String orderColumn, boolean ascending, int pageSize) {
+		if (!(mQueryBase instanceof Select)) {
+			throw new IllegalStateException("Only select queries can be paged.");
+		}
+
+		return new Pager<T>(this, orderColumn, ascending, pageSize);
+	}
+
+	/**
+	 * Builds the SQL of this select once, so that it can be run again with different arguments
+	 * without rebuilding the query.
+	 * @see PreparedQuery
+	 */
+	public <T extends Model> PreparedQuery<T> compile() {
+		if (!(mQueryBase instanceof Select)) {
+			throw new IllegalStateException("Only select queries can be compiled.");
+		}
+
+		final String sql = toSql();
+		final String limit = mLimit;
+		mLimit = "1";
+		final String singleSql = toSql();
+		mLimit = limit;
+
+		return new PreparedQuery<T>(mType, sql, singleSql, toCountSql(), toExistsSql(), getArguments(),
+				mBatchRelations, mIncludes);
+	}
+
 	public <T extends Model> T executeSingle() {
 		if (mQueryBase instanceof Select) {
 			limit(1);
-			return (T) SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments());
+			final T entity = (T) SQLiteUtils.rawQuerySingle(mType, toSql(), getArguments(), mBatchRelations);
+			if (entity != null) {
+				Include.load(mIncludes, Collections.singletonList(entity));
+			}
+			return entity;
 			
 		} else {
 			limit(1);
@@ -323,16 +477,24 @@ public final class From implements Sqlable {
      * @return <code>true</code> if the query returns at least one row; otherwise, <code>false</code>.
      */
     public boolean exists() {
-        return SQLiteUtils.intQuery(toExistsSql(), getArguments()) != 0;
+        return SQLiteUtils.longQuery(toExistsSql(), getArguments()) != 0;
     }
 
     /**
      * Gets the number of rows returned by the query.
      */
     public int count() {
-        return SQLiteUtils.intQuery(toCountSql(), getArguments());
+        return (int) SQLiteUtils.longQuery(toCountSql(), getArguments());
     }
 
+	Class<? extends Model> getType() {
+		return mType;
+	}
+
+	String getAlias() {
+		return mAlias;
+	}
+
 	public String[] getArguments() {
 		final int size = mArguments.size();
 		final String[] args = new String[size];
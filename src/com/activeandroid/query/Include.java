@@ -0,0 +1,60 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.Model;
+
+import java.util.List;
+
+/**
+ * A has-many relation to prefetch for the results of a query, see {@link From#include}.
+ */
+final class Include {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Class<? extends Model> mType;
+	private final String mForeignKey;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	Include(Class<? extends Model> type, String foreignKey) {
+		mType = type;
+		mForeignKey = foreignKey;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PACKAGE PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prefetches every relation in <code>includes</code>, which may be null, for
+	 * <code>parents</code>.
+	 */
+	static void load(List<Include> includes, List<? extends Model> parents) {
+		if (includes == null || parents.isEmpty()) {
+			return;
+		}
+
+		for (Include include : includes) {
+			Model.prefetchMany(parents, include.mType, include.mForeignKey);
+		}
+	}
+}
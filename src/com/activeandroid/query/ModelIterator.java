@@ -0,0 +1,205 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.Cursor;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the results of a query from an open {@link Cursor}, loading one model per call to
+ * {@link #next()}.
+ * <p>
+ * The cursor is closed once the last row has been returned. Callers that stop early must call
+ * {@link #close()} themselves. Like the cursor, an iterator can only be traversed once and must be
+ * used from a single thread.
+ * <p>
+ * When created with <code>reuseInstance</code>, every call to {@link #next()} returns the same
+ * model loaded with the next row, and models are not added to the {@link Cache}. The returned
+ * model must not be kept or saved after the next call.
+ */
+@SuppressWarnings("unchecked")
+public final class ModelIterator<T extends Model> implements Iterator<T>, Iterable<T>, Closeable {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Class<? extends Model> mType;
+	private final Cursor mCursor;
+	private final Constructor<?> mConstructor;
+	private final ColumnInfo[] mColumns;
+	private final int[] mColumnIndexes;
+
+	private final T mInstance;
+	private final Object[] mDefaults;
+
+	private boolean mHasNext;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	ModelIterator(Class<? extends Model> type, Cursor cursor, boolean reuseInstance) {
+		final TableInfo tableInfo = Cache.getTableInfo(type);
+
+		mType = type;
+		mCursor = cursor;
+		mColumns = tableInfo.getColumns();
+		mColumnIndexes = tableInfo.getColumnIndexes(cursor.getColumnNames());
+
+		try {
+			mConstructor = type.getConstructor();
+
+			if (reuseInstance) {
+				mInstance = (T) mConstructor.newInstance();
+
+				// Rows with NULL columns are reset to the values of a new instance, so nothing
+				// leaks from the previous row.
+				mDefaults = new Object[mColumns.length];
+				for (int i = 0; i < mColumns.length; i++) {
+					mDefaults[i] = mColumns[i].getField().get(mInstance);
+				}
+			}
+			else {
+				mInstance = null;
+				mDefaults = null;
+			}
+		}
+		catch (NoSuchMethodException e) {
+			cursor.close();
+			throw new RuntimeException("Your model " + type.getName() + " does not define a default constructor.");
+		}
+		catch (Exception e) {
+			cursor.close();
+			throw new RuntimeException("Failed to instantiate " + type.getName() + ".", e);
+		}
+
+		mHasNext = cursor.moveToFirst();
+		if (!mHasNext) {
+			close();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() {
+		return mHasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!mHasNext) {
+			throw new NoSuchElementException();
+		}
+
+		final T entity;
+		try {
+			entity = mInstance != null ? loadInstance() : loadEntity();
+		}
+		catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+
+		mHasNext = mCursor.moveToNext();
+		if (!mHasNext) {
+			close();
+		}
+
+		return entity;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return This iterator, so that it can be used in a for-each loop. It can only be traversed
+	 * once.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		mHasNext = false;
+		if (!mCursor.isClosed()) {
+			mCursor.close();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private T loadEntity() {
+		final int idIndex = mColumnIndexes[0];
+		Model entity = null;
+		if (idIndex >= 0 && !mCursor.isNull(idIndex)) {
+			entity = Cache.getEntity(mType, mCursor.getLong(idIndex));
+		}
+
+		if (entity == null) {
+			try {
+				entity = (Model) mConstructor.newInstance();
+			}
+			catch (Exception e) {
+				throw new RuntimeException("Failed to instantiate " + mType.getName() + ".", e);
+			}
+		}
+
+		entity.loadFromCursor(mCursor, mColumnIndexes);
+		if (entity.getId() != null) {
+			Cache.addEntity(entity);
+		}
+
+		return (T) entity;
+	}
+
+	private T loadInstance() {
+		for (int i = 0; i < mColumns.length; i++) {
+			final int columnIndex = mColumnIndexes[i];
+			if (columnIndex >= 0 && mCursor.isNull(columnIndex)) {
+				final Field field = mColumns[i].getField();
+				try {
+					field.set(mInstance, mDefaults[i]);
+				}
+				catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+
+		mInstance.loadFromCursor(mCursor, mColumnIndexes);
+		return mInstance;
+	}
+}
@@ -0,0 +1,335 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.os.Build;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pages through the results of a select with keyset pagination. Instead of an OFFSET, every page
+ * after the first continues from the key of the last row of the previous page, so deep pages cost
+ * the same as the first one when the key is indexed.
+ * <p>
+ * Pages are ordered on the key column, then on the id column to break ties. Any order, limit or
+ * offset set on the {@link From} is ignored. The key column should not contain NULL values, since
+ * those rows can't be compared and are skipped.
+ * <p>
+ * Each page is queried when it is requested, so callers may fetch the next page ahead of time.
+ * A pager is not thread-safe.
+ */
+public final class Pager<T extends Model> implements Iterable<List<T>> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final From mFrom;
+	private final int mPageSize;
+
+	private final String mIdColumn;
+	private final String mOrderColumn;
+	private final String mOrderColumnName;
+	private final String mOrderBy;
+	private final String mComparison;
+
+	// Kept as their SQLite types, since text compares differently than numbers and loses the
+	// precision of doubles.
+	private Long mLastId;
+	private Object mLastKey;
+	private boolean mHasNextPage = true;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	Pager(From from, String orderColumn, boolean ascending, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive.");
+		}
+
+		final TableInfo tableInfo = Cache.getTableInfo(from.getType());
+		final String table = from.getAlias() != null ? from.getAlias() : tableInfo.getTableName();
+		final String direction = ascending ? " ASC" : " DESC";
+
+		mFrom = from;
+		mPageSize = pageSize;
+		mIdColumn = table + "." + tableInfo.getIdName();
+		mOrderColumn = orderColumn;
+		mComparison = ascending ? " > ?" : " < ?";
+
+		if (orderColumn != null) {
+			// The cursor only knows the column by its unqualified name.
+			mOrderColumnName = orderColumn.substring(orderColumn.lastIndexOf('.') + 1);
+			mOrderBy = orderColumn + direction + ", " + mIdColumn + direction;
+		}
+		else {
+			mOrderColumnName = null;
+			mOrderBy = mIdColumn + direction;
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public int getPageSize() {
+		return mPageSize;
+	}
+
+	public boolean hasNextPage() {
+		return mHasNextPage;
+	}
+
+	/**
+	 * Queries the page after the last one returned.
+	 *
+	 * @return The models of the page, or an empty list once there are no more pages.
+	 */
+	public List<T> nextPage() {
+		if (!mHasNextPage) {
+			return Collections.emptyList();
+		}
+
+		// Ask for one extra row to know whether there is another page without querying it.
+		final String[] arguments = mFrom.getArguments();
+		final Cursor cursor = Cache.openDatabase().rawQueryWithFactory(
+				new KeyCursorFactory(arguments.length, getKeys()),
+				mFrom.toPageSql(getKeyClause(), mOrderBy, mPageSize + 1), arguments, null);
+
+		final int count = cursor.getCount();
+		mHasNextPage = count > mPageSize;
+		if (count == 0) {
+			cursor.close();
+			return Collections.emptyList();
+		}
+
+		final int size = Math.min(count, mPageSize);
+		try {
+			cursor.moveToPosition(size - 1);
+			readLastKey(cursor);
+		}
+		catch (RuntimeException e) {
+			cursor.close();
+			throw e;
+		}
+
+		final List<T> page = new ArrayList<T>(size);
+		final ModelIterator<T> iterator = new ModelIterator<T>(mFrom.getType(), cursor, false);
+		try {
+			while (page.size() < size) {
+				page.add(iterator.next());
+			}
+		}
+		finally {
+			iterator.close();
+		}
+
+		return page;
+	}
+
+	/**
+	 * Starts again from the first page.
+	 */
+	public void reset() {
+		mLastId = null;
+		mLastKey = null;
+		mHasNextPage = true;
+	}
+
+	/**
+	 * @return An iterator over the remaining pages. Pages are shared with {@link #nextPage()}.
+	 */
+	@Override
+	public Iterator<List<T>> iterator() {
+		return new Iterator<List<T>>() {
+			@Override
+			public boolean hasNext() {
+				return hasNextPage();
+			}
+
+			@Override
+			public List<T> next() {
+				if (!hasNextPage()) {
+					throw new NoSuchElementException();
+				}
+
+				return nextPage();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private String getKeyClause() {
+		if (mLastId == null) {
+			return null;
+		}
+		else if (mOrderColumn == null) {
+			return mIdColumn + mComparison;
+		}
+
+		return "(" + mOrderColumn + mComparison + " OR (" + mOrderColumn + " = ? AND " + mIdColumn + mComparison + "))";
+	}
+
+	private Object[] getKeys() {
+		if (mLastId == null) {
+			return new Object[0];
+		}
+
+		return mOrderColumn == null
+				? new Object[] { mLastId }
+				: new Object[] { mLastKey, mLastKey, mLastId };
+	}
+
+	private void readLastKey(Cursor cursor) {
+		final String[] columnNames = cursor.getColumnNames();
+		final int idIndex = Cache.getTableInfo(mFrom.getType()).getColumnIndexes(columnNames)[0];
+		if (idIndex < 0) {
+			throw new IllegalStateException("Paged queries must select the id column.");
+		}
+		mLastId = cursor.getLong(idIndex);
+
+		if (mOrderColumnName != null) {
+			final int keyIndex = Arrays.asList(columnNames).indexOf(mOrderColumnName);
+			if (keyIndex < 0) {
+				throw new IllegalStateException("Paged queries must select the order column " + mOrderColumn + ".");
+			}
+			if (cursor.isNull(keyIndex)) {
+				throw new IllegalStateException("Can't page past a NULL value in " + mOrderColumn + ".");
+			}
+			mLastKey = readKey(cursor, keyIndex);
+		}
+	}
+
+	private Object readKey(Cursor cursor, int index) {
+		if (Build.VERSION.SDK_INT >= 11) {
+			switch (cursor.getType(index)) {
+			case Cursor.FIELD_TYPE_INTEGER:
+				return cursor.getLong(index);
+			case Cursor.FIELD_TYPE_FLOAT:
+				return cursor.getDouble(index);
+			case Cursor.FIELD_TYPE_BLOB:
+				return cursor.getBlob(index);
+			default:
+				return cursor.getString(index);
+			}
+		}
+
+		// Before Honeycomb the cursor can't tell, so go by the column of the model.
+		final ColumnInfo.Type type = getKeyType();
+		if (type == null) {
+			return cursor.getString(index);
+		}
+
+		switch (type) {
+		case BYTE:
+		case SHORT:
+		case INTEGER:
+		case LONG:
+		case BOOLEAN:
+		case MODEL:
+		case LAZY:
+			return cursor.getLong(index);
+		case FLOAT:
+		case DOUBLE:
+			return cursor.getDouble(index);
+		case BLOB:
+		case BYTE_ARRAY:
+			return cursor.getBlob(index);
+		default:
+			return cursor.getString(index);
+		}
+	}
+
+	private ColumnInfo.Type getKeyType() {
+		for (ColumnInfo column : Cache.getTableInfo(mFrom.getType()).getColumns()) {
+			if (column.getName().equalsIgnoreCase(mOrderColumnName)) {
+				return column.getType() == ColumnInfo.Type.SERIALIZED
+						? ColumnInfo.Type.of(column.getTypeSerializer().getSerializedType()) : column.getType();
+			}
+		}
+
+		return null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// INNER CLASSES
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Binds the keys of the last page with their types, after the arguments of the query which
+	 * are bound as strings.
+	 */
+	private static final class KeyCursorFactory implements SQLiteDatabase.CursorFactory {
+		private final int mOffset;
+		private final Object[] mKeys;
+
+		public KeyCursorFactory(int offset, Object[] keys) {
+			mOffset = offset;
+			mKeys = keys;
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+			for (int i = 0; i < mKeys.length; i++) {
+				final int index = mOffset + i + 1;
+				final Object key = mKeys[i];
+				if (key instanceof Long) {
+					query.bindLong(index, (Long) key);
+				}
+				else if (key instanceof Double) {
+					query.bindDouble(index, (Double) key);
+				}
+				else if (key instanceof byte[]) {
+					query.bindBlob(index, (byte[]) key);
+				}
+				else {
+					query.bindString(index, (String) key);
+				}
+			}
+
+			if (Build.VERSION.SDK_INT >= 11) {
+				return new SQLiteCursor(driver, editTable, query);
+			}
+
+			return new SQLiteCursor(db, driver, editTable, query);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.activeandroid.query;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.activeandroid.Model;
+import com.activeandroid.util.SQLiteUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A select built once by {@link From#compile()} and run many times with different arguments.
+ * <p>
+ * Arguments given while building the query are kept and come first, followed by the arguments
+ * passed to each call. Prepared queries are immutable, so they can be kept in static fields and
+ * shared between threads.
+ */
+public final class PreparedQuery<T extends Model> {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final Class<? extends Model> mType;
+	private final String mSql;
+	private final String mSingleSql;
+	private final String mCountSql;
+	private final String mExistsSql;
+	private final String[] mArguments;
+	private final boolean mBatchRelations;
+	private final List<Include> mIncludes;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	PreparedQuery(Class<? extends Model> type, String sql, String singleSql, String countSql, String existsSql,
+			String[] arguments, boolean batchRelations, List<Include> includes) {
+
+		mType = type;
+		mSql = sql;
+		mSingleSql = singleSql;
+		mCountSql = countSql;
+		mExistsSql = existsSql;
+		mArguments = arguments.clone();
+		mBatchRelations = batchRelations;
+		mIncludes = includes != null ? new ArrayList<Include>(includes) : null;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public Class<? extends Model> getType() {
+		return mType;
+	}
+
+	public String toSql() {
+		return mSql;
+	}
+
+	public List<T> execute(Object... args) {
+		final List<T> entities = SQLiteUtils.rawQuery(mType, mSql, getArguments(args), mBatchRelations);
+		Include.load(mIncludes, entities);
+		return entities;
+	}
+
+	public T executeSingle(Object... args) {
+		final T entity = SQLiteUtils.rawQuerySingle(mType, mSingleSql, getArguments(args), mBatchRelations);
+		if (entity != null) {
+			Include.load(mIncludes, Collections.singletonList(entity));
+		}
+		return entity;
+	}
+
+	public int count(Object... args) {
+		return (int) SQLiteUtils.longQuery(mCountSql, getArguments(args));
+	}
+
+	public boolean exists(Object... args) {
+		return SQLiteUtils.longQuery(mExistsSql, getArguments(args)) != 0;
+	}
+
+	/**
+	 * @return The arguments given while building the query followed by <code>args</code>, in the
+	 * form they are bound to the statement.
+	 */
+	public String[] getArguments(Object... args) {
+		final int size = mArguments.length;
+		final String[] arguments = new String[size + args.length];
+		System.arraycopy(mArguments, 0, arguments, 0, size);
+
+		for (int i = 0; i < args.length; i++) {
+			Object arg = args[i];
+			if (arg instanceof Boolean) {
+				arg = ((Boolean) arg) ? 1 : 0;
+			}
+			arguments[size + i] = arg != null ? arg.toString() : null;
+		}
+
+		return arguments;
+	}
+}
@@ -16,11 +16,13 @@ package com.activeandroid.query;
  * limitations under the License.
  */
 
+import com.activeandroid.WriteQueue;
 import com.activeandroid.util.SQLiteUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public final class Set implements Sqlable {
 	private Update mUpdate;
@@ -82,7 +84,15 @@ public final class Set implements Sqlable {
 	}
 
 	public void execute() {
-		SQLiteUtils.execSql(toSql(), getArguments());
+		final String sql = toSql();
+		final String[] arguments = getArguments();
+		WriteQueue.run(new Callable<Void>() {
+			@Override
+			public Void call() {
+				SQLiteUtils.executeUpdateDelete(sql, arguments);
+				return null;
+			}
+		});
 	}
 
 	public String[] getArguments() {
@@ -18,6 +18,8 @@ package com.activeandroid.util;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -45,6 +47,24 @@ public final class ReflectionUtils {
 		return isSubclassOf(type, TypeSerializer.class);
 	}
 
+	/**
+	 * @return The model referred to by a {@link com.activeandroid.Lazy} field, or null if it isn't declared.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Class<? extends Model> getLazyType(Field field) {
+		final Type genericType = field.getGenericType();
+		if (!(genericType instanceof ParameterizedType)) {
+			return null;
+		}
+
+		final Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		if (argument instanceof Class && isModel((Class<?>) argument)) {
+			return (Class<? extends Model>) argument;
+		}
+
+		return null;
+	}
+
 	// Meta-data
 
 	@SuppressWarnings("unchecked")
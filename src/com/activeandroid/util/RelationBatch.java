@@ -0,0 +1,198 @@
+package com.activeandroid.util;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
+
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+
+/**
+ * The models referenced by the rows of a cursor, loaded with one query per related type before
+ * the rows are hydrated, instead of one query per row.
+ * <p>
+ * While a batch is active on a thread, relations that miss the cache are looked up in it before
+ * falling back to loading the single row. Batches nest: the rows loaded for a batch resolve their
+ * own relations in a batch of their own.
+ */
+public final class RelationBatch {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE CONSTANTS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	// SQLITE_MAX_VARIABLE_NUMBER, which defaults to 999.
+	private static final int MAX_VARIABLES = 999;
+
+	private static final ThreadLocal<RelationBatch> sCurrent = new ThreadLocal<RelationBatch>();
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final RelationBatch mParent;
+	private final Map<Class<? extends Model>, LongSparseArray<Model>> mEntities;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private RelationBatch(RelationBatch parent, Map<Class<? extends Model>, LongSparseArray<Model>> entities) {
+		mParent = parent;
+		mEntities = entities;
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Collects the ids in the relation columns of every row of <code>cursor</code> that aren't
+	 * cached, and loads them with <code>WHERE id IN (...)</code> queries, chunked to the variable
+	 * limit of SQLite. The cursor is moved back to its first row afterwards.
+	 *
+	 * @param columnIndexes The column plan of the cursor, see {@link TableInfo#getColumnIndexes}.
+	 * @return The active batch, which must be ended with {@link #end()}, or null if the cursor
+	 * doesn't reference any uncached model.
+	 */
+	public static RelationBatch begin(TableInfo tableInfo, Cursor cursor, int[] columnIndexes) {
+		final Map<Class<? extends Model>, LongSparseArray<Model>> ids = collectIds(tableInfo, cursor, columnIndexes);
+		if (ids.isEmpty()) {
+			return null;
+		}
+
+		for (Map.Entry<Class<? extends Model>, LongSparseArray<Model>> entry : ids.entrySet()) {
+			load(entry.getKey(), entry.getValue());
+		}
+
+		final RelationBatch batch = new RelationBatch(sCurrent.get(), ids);
+		sCurrent.set(batch);
+		return batch;
+	}
+
+	/**
+	 * @return The entity loaded by an active batch of this thread, or null.
+	 */
+	public static Model getEntity(Class<? extends Model> type, long id) {
+		for (RelationBatch batch = sCurrent.get(); batch != null; batch = batch.mParent) {
+			final LongSparseArray<Model> entities = batch.mEntities.get(type);
+			if (entities != null) {
+				final Model entity = entities.get(id);
+				if (entity != null) {
+					return entity;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public void end() {
+		if (sCurrent.get() != this) {
+			throw new IllegalStateException("Relation batches must be ended in the reverse order they began.");
+		}
+
+		if (mParent != null) {
+			sCurrent.set(mParent);
+		}
+		else {
+			sCurrent.remove();
+		}
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	@SuppressWarnings("unchecked")
+	private static Map<Class<? extends Model>, LongSparseArray<Model>> collectIds(TableInfo tableInfo,
+			Cursor cursor, int[] columnIndexes) {
+
+		final Map<Class<? extends Model>, LongSparseArray<Model>> ids =
+				new LinkedHashMap<Class<? extends Model>, LongSparseArray<Model>>();
+
+		final ColumnInfo[] columns = tableInfo.getColumns();
+		int relationCount = 0;
+		final int[] relations = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].getType() == ColumnInfo.Type.MODEL && columnIndexes[i] >= 0) {
+				relations[relationCount++] = i;
+			}
+		}
+
+		if (relationCount == 0 || !cursor.moveToFirst()) {
+			return ids;
+		}
+
+		do {
+			for (int i = 0; i < relationCount; i++) {
+				final int columnIndex = columnIndexes[relations[i]];
+				if (cursor.isNull(columnIndex)) {
+					continue;
+				}
+
+				final Class<? extends Model> type = (Class<? extends Model>) columns[relations[i]].getField().getType();
+				final long id = cursor.getLong(columnIndex);
+				if (Cache.getEntity(type, id) != null || getEntity(type, id) != null) {
+					continue;
+				}
+
+				LongSparseArray<Model> typeIds = ids.get(type);
+				if (typeIds == null) {
+					typeIds = new LongSparseArray<Model>();
+					ids.put(type, typeIds);
+				}
+				typeIds.put(id, null);
+			}
+		}
+		while (cursor.moveToNext());
+
+		cursor.moveToFirst();
+		return ids;
+	}
+
+	// Replaces the collected ids of one type with the loaded entities.
+	private static void load(Class<? extends Model> type, LongSparseArray<Model> ids) {
+		final TableInfo tableInfo = Cache.getTableInfo(type);
+		final int size = ids.size();
+
+		for (int start = 0; start < size; start += MAX_VARIABLES) {
+			final int count = Math.min(MAX_VARIABLES, size - start);
+			final String[] arguments = new String[count];
+			final String[] parameters = new String[count];
+			for (int i = 0; i < count; i++) {
+				arguments[i] = String.valueOf(ids.keyAt(start + i));
+				parameters[i] = "?";
+			}
+
+			final String sql = String.format("SELECT * FROM %s WHERE %s IN (%s)", tableInfo.getTableName(),
+					tableInfo.getIdName(), TextUtils.join(", ", parameters));
+
+			final List<Model> entities = SQLiteUtils.rawQuery(type, sql, arguments, true);
+			for (Model entity : entities) {
+				ids.put(entity.getId(), entity);
+			}
+		}
+	}
+}
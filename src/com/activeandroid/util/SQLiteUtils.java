@@ -17,10 +17,14 @@ package com.activeandroid.util;
  */
 
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.text.TextUtils;
 
 import com.activeandroid.Cache;
+import com.activeandroid.Lazy;
 import com.activeandroid.Model;
 import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Column;
@@ -31,7 +35,6 @@ import java.lang.Long;
 import java.lang.String;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -103,23 +106,78 @@ public final class SQLiteUtils {
 	}
 
 	public static <T extends Model> List<T> rawQuery(Class<? extends Model> type, String sql, String[] selectionArgs) {
+		return rawQuery(type, sql, selectionArgs, false);
+	}
+
+	/**
+	 * @param batchRelations <code>true</code> to load the models referenced by the results with
+	 * one query per related type, see {@link RelationBatch}.
+	 */
+	public static <T extends Model> List<T> rawQuery(Class<? extends Model> type, String sql, String[] selectionArgs,
+			boolean batchRelations) {
+
 		Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
-		List<T> entities = processCursor(type, cursor);
+		List<T> entities = processCursor(type, cursor, batchRelations);
 		cursor.close();
 
 		return entities;
 	}
 	  
 	public static int intQuery(final String sql, final String[] selectionArgs) {
-        final Cursor cursor = Cache.openDatabase().rawQuery(sql, selectionArgs);
-        final int number = processIntCursor(cursor);
-        cursor.close();
+		return (int) longQuery(sql, selectionArgs);
+	}
 
-        return number;
+	/**
+	 * Runs a query with a cached statement and returns the first column of the first row, or 0 if
+	 * there are no rows.
+	 */
+	public static long longQuery(String sql, String[] selectionArgs) {
+		final SQLiteDatabase db = Cache.openDatabase();
+		final StatementCache statements = Cache.getStatementCache();
+		final SQLiteStatement statement = statements.acquire(db, sql);
+		try {
+			bindArguments(statement, selectionArgs);
+			return statement.simpleQueryForLong();
+		}
+		catch (SQLiteDoneException e) {
+			return 0;
+		}
+		finally {
+			statements.release(db, sql, statement);
+		}
+	}
+
+	/**
+	 * Runs an UPDATE or DELETE with a cached statement.
+	 *
+	 * @return The number of rows changed, or -1 if the platform can't tell (before API 11).
+	 */
+	public static int executeUpdateDelete(String sql, String[] bindArgs) {
+		final SQLiteDatabase db = Cache.openDatabase();
+		final StatementCache statements = Cache.getStatementCache();
+		final SQLiteStatement statement = statements.acquire(db, sql);
+		try {
+			bindArguments(statement, bindArgs);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				return statement.executeUpdateDelete();
+			}
+
+			statement.execute();
+			return -1;
+		}
+		finally {
+			statements.release(db, sql, statement);
+		}
 	}
 
 	public static <T extends Model> T rawQuerySingle(Class<? extends Model> type, String sql, String[] selectionArgs) {
-		List<T> entities = rawQuery(type, sql, selectionArgs);
+		return rawQuerySingle(type, sql, selectionArgs, false);
+	}
+
+	public static <T extends Model> T rawQuerySingle(Class<? extends Model> type, String sql, String[] selectionArgs,
+			boolean batchRelations) {
+
+		List<T> entities = rawQuery(type, sql, selectionArgs, batchRelations);
 
 		if (entities.size() > 0) {
 			return entities.get(0);
@@ -264,6 +322,14 @@ public final class SQLiteUtils {
 		if (typeSerializer != null) {
 			type = typeSerializer.getSerializedType();
 		}
+		else if (type.equals(Lazy.class)) {
+			// Stored like the relation it wraps.
+			type = ReflectionUtils.getLazyType(field);
+			if (type == null) {
+				Log.e("No model declared for lazy column: " + name);
+				return null;
+			}
+		}
 
 		if (TYPE_MAP.containsKey(type)) {
 			definition.append(name);
@@ -320,28 +386,41 @@ public final class SQLiteUtils {
 		return definition.toString();
 	}
 
-	@SuppressWarnings("unchecked")
 	public static <T extends Model> List<T> processCursor(Class<? extends Model> type, Cursor cursor) {
+		return processCursor(type, cursor, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T extends Model> List<T> processCursor(Class<? extends Model> type, Cursor cursor,
+			boolean batchRelations) {
+
 		TableInfo tableInfo = Cache.getTableInfo(type);
-		String idName = tableInfo.getIdName();
 		final List<T> entities = new ArrayList<T>();
+		RelationBatch relations = null;
 
 		try {
 			Constructor<?> entityConstructor = type.getConstructor();
 
 			if (cursor.moveToFirst()) {
-                /**
-                 * Obtain the columns ordered to fix issue #106 (https://github.com/pardom/ActiveAndroid/issues/106)
-                 * when the cursor have multiple columns with same name obtained from join tables.
-                 */
-                List<String> columnsOrdered = new ArrayList<String>(Arrays.asList(cursor.getColumnNames()));
+				// Resolve the cursor columns once for all rows. The plan keeps the first of
+				// duplicate column names from joins (issue #106).
+				final int[] columnIndexes = tableInfo.getColumnIndexes(cursor.getColumnNames());
+				final int idIndex = columnIndexes[0];
+
+				if (batchRelations) {
+					relations = RelationBatch.begin(tableInfo, cursor, columnIndexes);
+				}
+
 				do {
-					Model entity = Cache.getEntity(type, cursor.getLong(columnsOrdered.indexOf(idName)));
+					Model entity = Cache.getEntity(type, cursor.getLong(idIndex));
 					if (entity == null) {
 						entity = (T) entityConstructor.newInstance();
 					}
 
-					entity.loadFromCursor(cursor);
+					entity.loadFromCursor(cursor, columnIndexes);
+					if (entity.getId() != null) {
+						Cache.addEntity(entity);
+					}
 					entities.add((T) entity);
 				}
 				while (cursor.moveToNext());
@@ -361,16 +440,29 @@ public final class SQLiteUtils {
 		catch (Exception e) {
 			Log.e("Failed to process cursor.", e);
 		}
+		finally {
+			if (relations != null) {
+				relations.end();
+			}
+		}
 
 		return entities;
 	}
 
-	private static int processIntCursor(final Cursor cursor) {
-        if (cursor.moveToFirst()) {
-            return cursor.getInt(0);
-	    }
-        return 0;
-    }
+	private static void bindArguments(SQLiteStatement statement, String[] args) {
+		if (args == null) {
+			return;
+		}
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] == null) {
+				statement.bindNull(i + 1);
+			}
+			else {
+				statement.bindString(i + 1, args[i]);
+			}
+		}
+	}
 
 	public static List<String> lexSqlScript(String sqlScript) {
 		ArrayList<String> sl = new ArrayList<String>();
@@ -0,0 +1,137 @@
+package com.activeandroid.util;
+
+/*
+ * Copyright (C) 2010 Michael Pardo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.v4.util.LruCache;
+
+/**
+ * A bounded LRU cache of compiled statements keyed by their SQL.
+ * <p>
+ * A statement can only be used by one thread at a time, so statements are checked out with
+ * {@link #acquire(SQLiteDatabase, String)} and handed back with
+ * {@link #release(SQLiteDatabase, String, SQLiteStatement)}. Statements that fall out of the
+ * cache are closed.
+ */
+public final class StatementCache {
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PRIVATE MEMBERS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	private final LruCache<String, SQLiteStatement> mStatements;
+	private SQLiteDatabase mDatabase;
+
+	private int mHitCount = 0;
+	private int mMissCount = 0;
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	public StatementCache(int maxSize) {
+		mStatements = new LruCache<String, SQLiteStatement>(maxSize) {
+			@Override
+			protected void entryRemoved(boolean evicted, String key, SQLiteStatement oldValue,
+					SQLiteStatement newValue) {
+
+				// Statements removed by acquire are in use and must stay open.
+				if (evicted || newValue != null) {
+					oldValue.close();
+				}
+			}
+		};
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	//////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Checks out the statement for <code>sql</code>, compiling it if it isn't cached or is in use.
+	 */
+	public SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+		synchronized (this) {
+			// Statements can't outlive the database they were compiled for.
+			if (db != mDatabase) {
+				mStatements.evictAll();
+				mDatabase = db;
+			}
+
+			final SQLiteStatement statement = mStatements.remove(sql);
+			if (statement != null) {
+				mHitCount++;
+				return statement;
+			}
+			mMissCount++;
+		}
+
+		return db.compileStatement(sql);
+	}
+
+	/**
+	 * Returns a statement checked out with {@link #acquire(SQLiteDatabase, String)}. Its bindings
+	 * are cleared, or it is closed if the cache was cleared in the meantime.
+	 */
+	public void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+		synchronized (this) {
+			if (db == mDatabase) {
+				statement.clearBindings();
+				mStatements.put(sql, statement);
+				return;
+			}
+		}
+
+		statement.close();
+	}
+
+	/**
+	 * Closes and removes all cached statements. Statements that are checked out are not affected.
+	 */
+	public synchronized void clear() {
+		mStatements.evictAll();
+		mDatabase = null;
+	}
+
+	public synchronized int size() {
+		return mStatements.size();
+	}
+
+	public int maxSize() {
+		return mStatements.maxSize();
+	}
+
+	/**
+	 * @return The number of times a cached statement was reused.
+	 */
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return The number of times a statement had to be compiled.
+	 */
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("StatementCache[size=%d,maxSize=%d,hits=%d,misses=%d]", size(), maxSize(),
+				mHitCount, mMissCount);
+	}
+}
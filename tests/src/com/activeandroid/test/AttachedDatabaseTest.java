@@ -0,0 +1,126 @@
+package com.activeandroid.test;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.activeandroid.Configuration;
+import com.activeandroid.DatabaseHelper;
+
+import java.io.File;
+
+/**
+ * Copies the seed databases in the test assets. Each holds a Seeds table of 200 rows.
+ */
+public class AttachedDatabaseTest extends AndroidTestCase {
+    private static final String[] DATABASE_NAMES = {
+            "Seed.db", "SeedGzipped.db", "SeedTruncated.db", "SeedTruncatedGzipped.db" };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteDatabases();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDatabases();
+        super.tearDown();
+    }
+
+    public void testCopy() {
+        copy("Seed.db");
+
+        assertSeeded("Seed.db");
+    }
+
+    public void testCopyGzipped() {
+        copy("SeedGzipped.db");
+
+        assertSeeded("SeedGzipped.db");
+    }
+
+    /**
+     * A copy that fails the check shouldn't be renamed into place, or left behind.
+     */
+    public void testTruncated() {
+        copy("SeedTruncated.db");
+
+        assertFalse(getContext().getDatabasePath("SeedTruncated.db").exists());
+        assertCopyRemoved("SeedTruncated.db");
+    }
+
+    /**
+     * A gzipped copy that ends early fails while copying, before the check.
+     */
+    public void testTruncatedGzipped() {
+        copy("SeedTruncatedGzipped.db");
+
+        assertFalse(getContext().getDatabasePath("SeedTruncatedGzipped.db").exists());
+        assertCopyRemoved("SeedTruncatedGzipped.db");
+    }
+
+    /**
+     * An existing database should be kept rather than overwritten by the seed.
+     */
+    public void testExistingDatabaseKept() {
+        SQLiteDatabase db = getContext().openOrCreateDatabase("Seed.db", 0, null);
+        db.execSQL("CREATE TABLE Existing (Id INTEGER PRIMARY KEY)");
+        db.close();
+
+        copy("Seed.db");
+
+        db = SQLiteDatabase.openDatabase(getContext().getDatabasePath("Seed.db").getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'Seeds'", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(0, cursor.getInt(0));
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        finally {
+            db.close();
+        }
+    }
+
+    // The helper copies the attached database when it's created.
+    private void copy(String databaseName) {
+        new DatabaseHelper(new Configuration.Builder(getContext()).setDatabaseName(databaseName).create());
+    }
+
+    private void assertSeeded(String databaseName) {
+        File path = getContext().getDatabasePath(databaseName);
+        assertTrue(path.exists());
+        assertCopyRemoved(databaseName);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM Seeds", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(200, cursor.getInt(0));
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        finally {
+            db.close();
+        }
+    }
+
+    private void assertCopyRemoved(String databaseName) {
+        assertFalse(new File(getContext().getDatabasePath(databaseName).getPath() + ".copy").exists());
+    }
+
+    private void deleteDatabases() {
+        for (String databaseName : DATABASE_NAMES) {
+            getContext().deleteDatabase(databaseName);
+            new File(getContext().getDatabasePath(databaseName).getPath() + ".copy").delete();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.activeandroid.test;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.serializer.TypeSerializer;
+import com.activeandroid.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compares the per-row cost of the resolved column path against the <code>Class.equals</code>
+ * chain it replaced. The numbers are written to logcat under the "BindingBenchmark" tag.
+ */
+public class BindingBenchmarkTest extends ActiveAndroidTestCase {
+    private static final String TAG = "BindingBenchmark";
+    private static final int ROWS = 2000;
+
+    public void testSaveAndLoadPerRow() throws Exception {
+        new Delete().from(BenchmarkModel.class).execute();
+        final TableInfo tableInfo = Cache.getTableInfo(BenchmarkModel.class);
+        assertNull(tableInfo.getBinder());
+
+        // Save
+        ActiveAndroid.beginTransaction();
+        long legacySave;
+        long columnSave;
+        try {
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < ROWS; i++) {
+                final ContentValues values = new ContentValues();
+                legacyBind(tableInfo, createModel(i), values);
+                Cache.openDatabase().insert(tableInfo.getTableName(), null, values);
+            }
+            legacySave = SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < ROWS; i++) {
+                createModel(i).save();
+            }
+            columnSave = SystemClock.elapsedRealtime() - start;
+
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        // Load
+        Cursor cursor = Cache.openDatabase().rawQuery("SELECT * FROM " + tableInfo.getTableName(), null);
+        long legacyLoad;
+        long columnLoad;
+        try {
+            assertEquals(ROWS * 2, cursor.getCount());
+
+            Cache.clear();
+            long start = SystemClock.elapsedRealtime();
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                legacyLoad(tableInfo, new BenchmarkModel(), cursor);
+            }
+            legacyLoad = SystemClock.elapsedRealtime() - start;
+
+            Cache.clear();
+            start = SystemClock.elapsedRealtime();
+            for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+                new BenchmarkModel().loadFromCursor(cursor);
+            }
+            columnLoad = SystemClock.elapsedRealtime() - start;
+        }
+        finally {
+            cursor.close();
+        }
+
+        report("save", legacySave, columnSave);
+        report("load", legacyLoad, columnLoad);
+    }
+
+    private static BenchmarkModel createModel(int i) {
+        final BenchmarkModel model = new BenchmarkModel();
+        model.set(i, "row " + i, new Date(i), i % 2 == 0 ? MockEnum.EVEN : MockEnum.ODD);
+        return model;
+    }
+
+    private static void report(String operation, long legacyMillis, long columnMillis) {
+        android.util.Log.i(TAG, String.format("%s: legacy %.1f us/row, columns %.1f us/row",
+                operation, legacyMillis * 1000.0 / ROWS, columnMillis * 1000.0 / ROWS));
+    }
+
+    // The reflective binding as it was before columns were resolved in TableInfo.
+
+    private static void legacyBind(TableInfo tableInfo, Model model, ContentValues values) throws Exception {
+        for (Field field : tableInfo.getFields()) {
+            final String fieldName = tableInfo.getColumnName(field);
+            Class<?> fieldType = field.getType();
+
+            field.setAccessible(true);
+            Object value = field.get(model);
+
+            if (value != null) {
+                final TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+                if (typeSerializer != null) {
+                    value = typeSerializer.serialize(value);
+                    if (value != null) {
+                        fieldType = value.getClass();
+                    }
+                }
+            }
+
+            if (value == null) {
+                values.putNull(fieldName);
+            }
+            else if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
+                values.put(fieldName, (Byte) value);
+            }
+            else if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
+                values.put(fieldName, (Short) value);
+            }
+            else if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
+                values.put(fieldName, (Integer) value);
+            }
+            else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
+                values.put(fieldName, (Long) value);
+            }
+            else if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
+                values.put(fieldName, (Float) value);
+            }
+            else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
+                values.put(fieldName, (Double) value);
+            }
+            else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
+                values.put(fieldName, (Boolean) value);
+            }
+            else if (fieldType.equals(Character.class) || fieldType.equals(char.class)) {
+                values.put(fieldName, value.toString());
+            }
+            else if (fieldType.equals(String.class)) {
+                values.put(fieldName, value.toString());
+            }
+            else if (fieldType.equals(Byte[].class) || fieldType.equals(byte[].class)) {
+                values.put(fieldName, (byte[]) value);
+            }
+            else if (ReflectionUtils.isModel(fieldType)) {
+                values.put(fieldName, ((Model) value).getId());
+            }
+            else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
+                values.put(fieldName, ((Enum<?>) value).name());
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void legacyLoad(TableInfo tableInfo, Model model, Cursor cursor) throws Exception {
+        List<String> columnsOrdered = new ArrayList<String>(Arrays.asList(cursor.getColumnNames()));
+        for (Field field : tableInfo.getFields()) {
+            final String fieldName = tableInfo.getColumnName(field);
+            Class<?> fieldType = field.getType();
+            final int columnIndex = columnsOrdered.indexOf(fieldName);
+
+            if (columnIndex < 0 || cursor.isNull(columnIndex)) {
+                continue;
+            }
+
+            field.setAccessible(true);
+
+            TypeSerializer typeSerializer = Cache.getParserForType(fieldType);
+            Object value = null;
+
+            if (typeSerializer != null) {
+                fieldType = typeSerializer.getSerializedType();
+            }
+
+            if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
+                value = cursor.getInt(columnIndex);
+            }
+            else if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
+                value = cursor.getLong(columnIndex);
+            }
+            else if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
+                value = cursor.getDouble(columnIndex);
+            }
+            else if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
+                value = cursor.getInt(columnIndex) != 0;
+            }
+            else if (fieldType.equals(String.class)) {
+                value = cursor.getString(columnIndex);
+            }
+            else if (ReflectionUtils.isSubclassOf(fieldType, Enum.class)) {
+                value = Enum.valueOf((Class<? extends Enum>) fieldType, cursor.getString(columnIndex));
+            }
+
+            if (typeSerializer != null) {
+                value = typeSerializer.deserialize(value);
+            }
+
+            if (value != null) {
+                field.set(model, value);
+            }
+        }
+
+        if (model.getId() != null) {
+            Cache.addEntity(model);
+        }
+    }
+
+    public enum MockEnum {
+        EVEN, ODD
+    }
+
+    /**
+     * Private columns keep the model on the reflective path even when the binder processor runs.
+     */
+    @Table(name = "BenchmarkModel")
+    public static class BenchmarkModel extends Model {
+        @Column
+        private int intField;
+
+        @Column
+        private long longField;
+
+        @Column
+        private double doubleField;
+
+        @Column
+        private boolean booleanField;
+
+        @Column
+        private String stringField;
+
+        @Column
+        private Date dateField;
+
+        @Column
+        private MockEnum enumField;
+
+        void set(int value, String string, Date date, MockEnum enumValue) {
+            intField = value;
+            longField = value;
+            doubleField = value;
+            booleanField = value % 2 == 0;
+            stringField = string;
+            dateField = date;
+            enumField = enumValue;
+        }
+    }
+}
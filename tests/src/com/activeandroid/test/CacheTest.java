@@ -10,6 +10,7 @@ import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Table;
 
 import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
 
 public class CacheTest extends AndroidTestCase {
 
@@ -40,6 +41,42 @@ public class CacheTest extends AndroidTestCase {
         }
     }
 
+    /**
+     * Tables are built on first use, threads racing to build one should all get the same instance.
+     */
+    public void testGetTableInfoFromManyThreads() throws InterruptedException {
+        final int threadCount = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final TableInfo[] tableInfos = new TableInfo[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    tableInfos[index] = Cache.getTableInfo(CacheTestModel2.class);
+                }
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (TableInfo tableInfo : tableInfos) {
+            assertSame(tableInfos[0], tableInfo);
+        }
+        assertTrue(Cache.getTableInfos().contains(tableInfos[0]));
+    }
+
     @Table(name = "CacheTestModel")
     private static class CacheTestModel extends Model {
     }
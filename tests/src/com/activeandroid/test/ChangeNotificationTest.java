@@ -0,0 +1,140 @@
+package com.activeandroid.test;
+
+import android.database.ContentObserver;
+import android.os.SystemClock;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.content.ContentProvider;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChangeNotificationTest extends ActiveAndroidTestCase {
+    private static final long TIMEOUT = 2000;
+    private static final long QUIET_PERIOD = 200;
+
+    private CountingObserver mObserver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mObserver = new CountingObserver();
+        Cache.getContext().getContentResolver()
+                .registerContentObserver(ContentProvider.createUri(MockModel.class, null), true, mObserver);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Cache.getContext().getContentResolver().unregisterContentObserver(mObserver);
+
+        super.tearDown();
+    }
+
+    /**
+     * Saves outside a transaction should notify right away.
+     */
+    public void testSaveNotifies() {
+        new MockModel().save();
+
+        assertEquals(1, mObserver.awaitCount(1));
+    }
+
+    /**
+     * A transaction should notify once per table, after it ends.
+     */
+    public void testTransactionNotifiesOnce() {
+        ActiveAndroid.beginTransaction();
+        try {
+            for (int i = 0; i < 100; i++) {
+                MockModel model = new MockModel();
+                model.intField = i;
+                model.save();
+            }
+
+            SystemClock.sleep(QUIET_PERIOD);
+            assertEquals(0, mObserver.getCount());
+
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        assertEquals(1, mObserver.awaitCount(1));
+    }
+
+    /**
+     * A nested transaction should defer to the outermost one.
+     */
+    public void testNestedTransaction() {
+        ActiveAndroid.beginTransaction();
+        try {
+            ActiveAndroid.beginTransaction();
+            try {
+                new MockModel().save();
+                ActiveAndroid.setTransactionSuccessful();
+            }
+            finally {
+                ActiveAndroid.endTransaction();
+            }
+
+            new MockModel().save();
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        assertEquals(1, mObserver.awaitCount(1));
+    }
+
+    /**
+     * A rolled back transaction shouldn't notify at all.
+     */
+    public void testRollbackDropsNotifications() {
+        ActiveAndroid.beginTransaction();
+        try {
+            new MockModel().save();
+            new MockModel().save();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        // Notifications are delivered in order, so this one arriving alone shows none were sent before.
+        new MockModel().save();
+
+        assertEquals(1, mObserver.awaitCount(1));
+    }
+
+    static class CountingObserver extends ContentObserver {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        public CountingObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mCount.incrementAndGet();
+        }
+
+        public int getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * Waits for at least <code>count</code> notifications, then a little longer for any extra ones.
+         */
+        public int awaitCount(int count) {
+            final long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+            while (mCount.get() < count && SystemClock.uptimeMillis() < deadline) {
+                SystemClock.sleep(10);
+            }
+
+            SystemClock.sleep(QUIET_PERIOD);
+            return mCount.get();
+        }
+    }
+}
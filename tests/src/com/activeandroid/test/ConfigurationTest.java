@@ -21,6 +21,30 @@ public class ConfigurationTest extends AndroidTestCase {
         assertFalse(conf.isValid());
         assertNull(conf.getTypeSerializers());
         assertEquals(Configuration.SQL_PARSER_LEGACY, conf.getSqlParser());
+        assertEquals(Configuration.CACHE_REFERENCES_STRONG, conf.getCacheReferences());
+        assertFalse(conf.isWriteAheadLoggingEnabled());
+        assertNull(conf.getSynchronous());
+        assertNull(conf.getJournalSizeLimit());
+        assertNull(conf.getPageCacheSize());
+        assertNull(conf.getMmapSize());
+        assertNull(conf.getTempStore());
+    }
+
+    public void testDatabaseOptions() {
+        Configuration conf = new Configuration.Builder(getContext())
+                .setWriteAheadLoggingEnabled(true)
+                .setSynchronous(Configuration.SYNCHRONOUS_NORMAL)
+                .setJournalSizeLimit(1024 * 1024)
+                .setPageCacheSize(-2000)
+                .setMmapSize(64 * 1024 * 1024)
+                .setTempStore(Configuration.TEMP_STORE_MEMORY)
+                .create();
+        assertTrue(conf.isWriteAheadLoggingEnabled());
+        assertEquals(Configuration.SYNCHRONOUS_NORMAL, conf.getSynchronous());
+        assertEquals(Long.valueOf(1024 * 1024), conf.getJournalSizeLimit());
+        assertEquals(Integer.valueOf(-2000), conf.getPageCacheSize());
+        assertEquals(Long.valueOf(64 * 1024 * 1024), conf.getMmapSize());
+        assertEquals(Configuration.TEMP_STORE_MEMORY, conf.getTempStore());
     }
 
     public void testCreateConfigurationWithMockModel() {
@@ -0,0 +1,76 @@
+package com.activeandroid.test;
+
+import android.database.Cursor;
+import android.os.Build;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Configuration;
+
+public class DatabasePragmaTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    /**
+     * Without write-ahead logging the database has a single connection, which should have them all.
+     */
+    public void testPragmasWithoutWriteAheadLogging() {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setSynchronous(Configuration.SYNCHRONOUS_OFF)
+                .setPageCacheSize(-1234)
+                .setTempStore(Configuration.TEMP_STORE_MEMORY)
+                .create());
+
+        assertEquals("0", readFromWriter("synchronous"));
+        assertEquals("-1234", readFromWriter("cache_size"));
+        assertEquals("2", readFromWriter("temp_store"));
+    }
+
+    /**
+     * With write-ahead logging the pragmas should reach the connection that writes, not a reader.
+     */
+    public void testPragmasWithWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setWriteAheadLoggingEnabled(true)
+                .setSynchronous(Configuration.SYNCHRONOUS_OFF)
+                .setPageCacheSize(-1234)
+                .create());
+
+        assertEquals("wal", readFromWriter("journal_mode").toLowerCase());
+        assertEquals("-1234", readFromWriter("cache_size"));
+
+        // Between API 16 and 29 the platform sets its own level along with write-ahead logging.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || Build.VERSION.SDK_INT >= 30) {
+            assertEquals("0", readFromWriter("synchronous"));
+        }
+    }
+
+    private String readFromWriter(String pragma) {
+        // A transaction holds the primary connection, so the read can't be routed to a reader.
+        ActiveAndroid.beginTransaction();
+        try {
+            Cursor cursor = ActiveAndroid.getDatabase().rawQuery("PRAGMA " + pragma + ";", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                return cursor.getString(0);
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.activeandroid.test;
+
+import android.os.Debug;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EntityCacheAllocationTest extends ActiveAndroidTestCase {
+    private static final int ROWS = 10000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // The default cache is too small to hold every row.
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext()).setCacheSize(ROWS * 2).create());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    /**
+     * Looking up cached rows, as processCursor does for every row it hydrates, shouldn't allocate.
+     */
+    public void testCacheHitsDoNotAllocate() {
+        new Delete().from(MockModel.class).execute();
+
+        List<MockModel> models = new ArrayList<MockModel>(ROWS);
+        ActiveAndroid.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                MockModel model = new MockModel();
+                model.save();
+                models.add(model);
+            }
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        long[] ids = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            Cache.addEntity(models.get(i));
+            ids[i] = models.get(i).getId();
+        }
+
+        // Warm up so that nothing is allocated lazily on the first lookup.
+        assertSame(models.get(0), Cache.getEntity(MockModel.class, ids[0]));
+
+        int hits = 0;
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                if (Cache.getEntity(MockModel.class, ids[i]) != null) {
+                    hits++;
+                }
+            }
+        }
+        finally {
+            Debug.stopAllocCounting();
+        }
+
+        assertEquals(ROWS, hits);
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+
+    /**
+     * Reading rows that are already cached shouldn't allocate per row, neither to look them up
+     * nor to add them to the cache again.
+     */
+    public void testSelectOfCachedRowsDoesNotAllocatePerRow() {
+        new Delete().from(MockModel.class).execute();
+
+        ActiveAndroid.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                MockModel model = new MockModel();
+                model.intField = i;
+                model.save();
+            }
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        // Caches every row, and warms up the query plan and statement.
+        List<MockModel> first = new Select().from(MockModel.class).execute();
+        assertEquals(ROWS, first.size());
+
+        List<MockModel> second;
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            second = new Select().from(MockModel.class).execute();
+        }
+        finally {
+            Debug.stopAllocCounting();
+        }
+
+        assertEquals(first, second);
+        assertSame(first.get(0), second.get(0));
+        // Building and running the query allocates a fixed amount, as does growing the result list.
+        assertTrue("Allocated " + Debug.getThreadAllocCount() + " objects for " + ROWS + " rows.",
+                Debug.getThreadAllocCount() < ROWS / 10);
+    }
+}
@@ -0,0 +1,109 @@
+package com.activeandroid.test;
+
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+import com.activeandroid.query.Delete;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares lookups from several threads through {@link Cache} against the single lock that used to
+ * guard every entity and metadata lookup. The numbers are written to logcat under the
+ * "EntityCacheBenchmark" tag.
+ */
+public class EntityCacheBenchmarkTest extends ActiveAndroidTestCase {
+    private static final String TAG = "EntityCacheBenchmark";
+    private static final int THREADS = 4;
+    private static final int ENTITIES = 500;
+    private static final int LOOKUPS = 20000;
+
+    public void testConcurrentLookups() throws Exception {
+        new Delete().from(MockModel.class).execute();
+        Cache.clear();
+
+        final List<MockModel> models = new ArrayList<MockModel>();
+        for (int i = 0; i < ENTITIES; i++) {
+            MockModel model = new MockModel();
+            model.save();
+            Cache.addEntity(model);
+            models.add(model);
+        }
+
+        final LruCache<String, Model> legacyEntities = new LruCache<String, Model>(Cache.DEFAULT_CACHE_SIZE);
+        for (MockModel model : models) {
+            legacyEntities.put(Cache.getIdentifier(model), model);
+        }
+        final Object legacyLock = new Object();
+
+        long legacy = run(new Lookup() {
+            @Override
+            public Model lookup(long id) {
+                synchronized (legacyLock) {
+                    Cache.getTableInfo(MockModel.class);
+                }
+                synchronized (legacyLock) {
+                    return legacyEntities.get(Cache.getIdentifier(MockModel.class, id));
+                }
+            }
+        }, models);
+
+        long striped = run(new Lookup() {
+            @Override
+            public Model lookup(long id) {
+                TableInfo tableInfo = Cache.getTableInfo(MockModel.class);
+                return Cache.getEntity(tableInfo.getType(), id);
+            }
+        }, models);
+
+        android.util.Log.i(TAG, String.format("%d threads: global lock %d ms, striped %d ms",
+                THREADS, legacy, striped));
+    }
+
+    private long run(final Lookup lookup, final List<MockModel> models) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < LOOKUPS; i++) {
+                            MockModel model = models.get((i + offset) % models.size());
+                            assertSame(model, lookup.lookup(model.getId()));
+                        }
+                    }
+                    catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long begin = SystemClock.elapsedRealtime();
+        start.countDown();
+        done.await();
+        long elapsed = SystemClock.elapsedRealtime() - begin;
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        return elapsed;
+    }
+
+    private interface Lookup {
+        Model lookup(long id);
+    }
+}
@@ -0,0 +1,116 @@
+package com.activeandroid.test;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.lang.ref.WeakReference;
+
+public class EntityCacheReferencesTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    private void initialize(String references) {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setCacheReferences(references)
+                .create());
+
+        new Delete().from(MockModel.class).execute();
+    }
+
+    /**
+     * Loading a row should return the instance the app holds for it.
+     */
+    public void testWeakKeepsIdentity() {
+        initialize(Configuration.CACHE_REFERENCES_WEAK);
+
+        MockModel model = new MockModel();
+        model.save();
+
+        MockModel loaded = new Select().from(MockModel.class).where("Id = ?", model.getId()).executeSingle();
+        assertSame(model, loaded);
+    }
+
+    /**
+     * Entities nobody else refers to should be collected, and their entries removed.
+     */
+    public void testWeakDoesNotPin() throws Exception {
+        initialize(Configuration.CACHE_REFERENCES_WEAK);
+
+        long[] id = new long[1];
+        WeakReference<MockModel> probe = saveUnreferenced(id);
+        assertEquals(1, Cache.getEntityCacheSize());
+
+        for (int i = 0; i < 20 && probe.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(probe.get());
+        assertNull(Cache.getEntity(MockModel.class, id[0]));
+
+        // Cleared entries are removed on the next put, once the collector has queued them.
+        MockModel other = new MockModel();
+        other.save();
+        for (int i = 0; i < 20 && Cache.getEntityCacheSize() > 1; i++) {
+            Thread.sleep(50);
+            Cache.addEntity(other);
+        }
+        assertEquals(1, Cache.getEntityCacheSize());
+
+        // A new instance takes the place of the collected one.
+        MockModel reloaded = new Select().from(MockModel.class).where("Id = ?", id[0]).executeSingle();
+        assertNotNull(reloaded);
+        assertSame(reloaded, Cache.getEntity(MockModel.class, id[0]));
+    }
+
+    // Saves a model without keeping it in a local of the calling frame.
+    private WeakReference<MockModel> saveUnreferenced(long[] id) {
+        MockModel model = new MockModel();
+        model.save();
+        id[0] = model.getId();
+        return new WeakReference<MockModel>(model);
+    }
+
+    /**
+     * Soft references should keep identity just like strong ones.
+     */
+    public void testSoftKeepsIdentity() {
+        initialize(Configuration.CACHE_REFERENCES_SOFT);
+
+        MockModel model = new MockModel();
+        model.save();
+
+        assertSame(model, Cache.getEntity(MockModel.class, model.getId()));
+    }
+
+    /**
+     * Without strong references the cache size doesn't apply.
+     */
+    public void testWeakIsUnbounded() {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setCacheSize(2)
+                .setCacheReferences(Configuration.CACHE_REFERENCES_WEAK)
+                .create());
+
+        MockModel[] models = new MockModel[4];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = new MockModel();
+            models[i].save();
+        }
+
+        for (MockModel model : models) {
+            assertSame(model, Cache.getEntity(MockModel.class, model.getId()));
+        }
+        assertEquals(0, Cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,184 @@
+package com.activeandroid.test;
+
+import android.test.AndroidTestCase;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EntityCacheSizeTest extends AndroidTestCase {
+    private static final int BLOB_SIZE = 16 * 1024;
+    private static final int MAX_BYTES = 64 * 1024;
+
+    private final List<Model> mEvicted = new ArrayList<Model>();
+
+    private final Cache.EvictionListener mListener = new Cache.EvictionListener() {
+        @Override
+        public void onEntityEvicted(Model entity, int size) {
+            mEvicted.add(entity);
+        }
+    };
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    private void initialize(Configuration.Builder builder) {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(builder
+                .setDatabaseName("EntityCacheSizeTest")
+                .addModelClasses(BlobModel.class, BudgetModel.class)
+                .setCacheEvictionListener(mListener)
+                .create());
+    }
+
+    /**
+     * Large entities should count for more than small ones.
+     */
+    public void testSizedInBytes() {
+        initialize(new Configuration.Builder(getContext()).setCacheMaxBytes(MAX_BYTES));
+
+        BlobModel small = new BlobModel(0);
+        small.save();
+        long smallSize = Cache.getEntityCacheSize();
+        assertTrue(smallSize > 0);
+
+        BlobModel large = new BlobModel(BLOB_SIZE);
+        large.save();
+        assertTrue(Cache.getEntityCacheSize() - smallSize > BLOB_SIZE);
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    /**
+     * Should evict once the entities use more memory than allowed, and report every eviction.
+     */
+    public void testEvictsToMaxBytes() {
+        initialize(new Configuration.Builder(getContext()).setCacheMaxBytes(MAX_BYTES));
+
+        for (int i = 0; i < 8; i++) {
+            new BlobModel(BLOB_SIZE).save();
+        }
+
+        assertTrue(Cache.getEntityCacheSize() <= MAX_BYTES);
+        assertFalse(mEvicted.isEmpty());
+        assertEquals(mEvicted.size(), Cache.getEvictionCount());
+    }
+
+    /**
+     * A model should stay within its budget without evicting entities of other models.
+     */
+    public void testBudget() {
+        initialize(new Configuration.Builder(getContext()).setCacheMaxBytes(MAX_BYTES * 4));
+
+        BlobModel other = new BlobModel(BLOB_SIZE);
+        other.save();
+
+        List<BudgetModel> models = new ArrayList<BudgetModel>();
+        for (int i = 0; i < 4; i++) {
+            BudgetModel model = new BudgetModel(BLOB_SIZE);
+            model.save();
+            models.add(model);
+        }
+
+        assertSame(other, Cache.getEntity(BlobModel.class, other.getId()));
+        assertFalse(mEvicted.isEmpty());
+        for (Model evicted : mEvicted) {
+            assertTrue(evicted instanceof BudgetModel);
+        }
+
+        int cached = 0;
+        for (BudgetModel model : models) {
+            if (Cache.getEntity(BudgetModel.class, model.getId()) != null) {
+                cached++;
+            }
+        }
+        assertEquals(models.size() - mEvicted.size(), cached);
+    }
+
+    /**
+     * Budgets set on the configuration should override those of the annotation.
+     */
+    public void testConfigurationBudget() {
+        initialize(new Configuration.Builder(getContext())
+                .setCacheMaxBytes(MAX_BYTES * 4)
+                .setCacheBudget(BudgetModel.class, MAX_BYTES * 4));
+
+        for (int i = 0; i < 4; i++) {
+            new BudgetModel(BLOB_SIZE).save();
+        }
+
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    /**
+     * An entity larger than the whole cache shouldn't push everything else out.
+     */
+    public void testTooLargeIsNotCached() {
+        initialize(new Configuration.Builder(getContext()).setCacheMaxBytes(MAX_BYTES));
+
+        BlobModel small = new BlobModel(0);
+        small.save();
+
+        BlobModel huge = new BlobModel(MAX_BYTES * 2);
+        huge.save();
+
+        assertNull(Cache.getEntity(BlobModel.class, huge.getId()));
+        assertSame(small, Cache.getEntity(BlobModel.class, small.getId()));
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    /**
+     * Without a byte budget the cache should still count entities.
+     */
+    public void testSizedByCount() {
+        initialize(new Configuration.Builder(getContext()).setCacheSize(2));
+
+        for (int i = 0; i < 3; i++) {
+            new BlobModel(BLOB_SIZE).save();
+        }
+
+        assertEquals(2, Cache.getEntityCacheSize());
+        assertEquals(1, mEvicted.size());
+    }
+
+    @Table(name = "BlobModel")
+    public static class BlobModel extends Model {
+        @Column
+        public String name;
+
+        @Column
+        public byte[] data;
+
+        public BlobModel() {
+        }
+
+        BlobModel(int size) {
+            name = "blob";
+            data = new byte[size];
+        }
+    }
+
+    // Room for two blobs but not three.
+    @Table(name = "BudgetModel", cacheBudget = 40 * 1024)
+    public static class BudgetModel extends Model {
+        @Column
+        public byte[] data;
+
+        public BudgetModel() {
+        }
+
+        BudgetModel(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.activeandroid.test;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Configuration;
+import com.activeandroid.query.Select;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InitializationTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    /**
+     * Queries made before a background initialization finishes should wait for it.
+     */
+    public void testInitializeAsync() throws Exception {
+        final List<ActiveAndroid.InitializationPhase> phases =
+                Collections.synchronizedList(new ArrayList<ActiveAndroid.InitializationPhase>());
+
+        ActiveAndroid.dispose();
+        Future<Void> ready = ActiveAndroid.initializeAsync(new Configuration.Builder(getContext())
+                .setInitializationListener(new ActiveAndroid.InitializationListener() {
+                    @Override
+                    public void onPhaseFinished(ActiveAndroid.InitializationPhase phase, long elapsedNanos) {
+                        assertTrue(elapsedNanos >= 0);
+                        phases.add(phase);
+                    }
+                })
+                .create());
+
+        assertTrue(new Select().from(MockModel.class).count() >= 0);
+        ready.get(10, TimeUnit.SECONDS);
+
+        assertTrue(Cache.isInitialized());
+        assertEquals(Arrays.asList(ActiveAndroid.InitializationPhase.values()), phases);
+    }
+
+    /**
+     * Disposing while the initialization thread waits for the lock should keep it from running.
+     */
+    public void testDisposeWhileInitializing() throws Exception {
+        final AtomicInteger phases = new AtomicInteger();
+
+        ActiveAndroid.dispose();
+        Future<Void> ready;
+        synchronized (Cache.class) {
+            ready = ActiveAndroid.initializeAsync(new Configuration.Builder(getContext())
+                    .setInitializationListener(new ActiveAndroid.InitializationListener() {
+                        @Override
+                        public void onPhaseFinished(ActiveAndroid.InitializationPhase phase, long elapsedNanos) {
+                            phases.incrementAndGet();
+                        }
+                    })
+                    .create());
+
+            // Long enough for the thread to start running the task and block on the lock.
+            Thread.sleep(200);
+            ActiveAndroid.dispose();
+        }
+
+        try {
+            ready.get(10, TimeUnit.SECONDS);
+        }
+        catch (CancellationException e) {
+            // The thread hadn't started the task yet.
+        }
+
+        assertFalse(Cache.isInitialized());
+        assertEquals(0, phases.get());
+    }
+
+    /**
+     * Starting again while initialized should complete at once, without touching the database
+     * that is open.
+     */
+    public void testInitializeAsyncWhenInitialized() throws Exception {
+        SQLiteDatabase db = ActiveAndroid.getDatabase();
+        Future<Void> ready = ActiveAndroid.initializeAsync(getContext());
+
+        assertTrue(ready.isDone());
+        ready.get();
+        assertSame(db, ActiveAndroid.getDatabase());
+        assertTrue(db.isOpen());
+    }
+}
@@ -0,0 +1,88 @@
+package com.activeandroid.test;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Lazy;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.util.SQLiteUtils;
+
+public class LazyTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        new Delete().from(LazyModel.class).execute();
+        new Delete().from(MockModel.class).execute();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Other tests delete the mock models these rows refer to.
+        new Delete().from(LazyModel.class).execute();
+
+        super.tearDown();
+    }
+
+    /**
+     * Should store the id of the related model like an eager relation does.
+     */
+    public void testSave() {
+        MockModel author = new MockModel();
+        author.save();
+
+        LazyModel model = new LazyModel();
+        model.author = Lazy.of(author);
+        model.save();
+
+        assertEquals(author.getId().longValue(), SQLiteUtils.longQuery(
+                "SELECT author FROM LazyModel WHERE Id = ?", new String[] { model.getId().toString() }));
+    }
+
+    /**
+     * Loading a row should only read the foreign id, the related row is loaded on first access.
+     */
+    public void testLoadedOnFirstAccess() {
+        MockModel author = new MockModel();
+        author.intField = 42;
+        author.save();
+
+        LazyModel model = new LazyModel();
+        model.author = Lazy.of(author);
+        model.save();
+        Cache.clear();
+
+        LazyModel loaded = new Select().from(LazyModel.class).where("Id = ?", model.getId()).executeSingle();
+        assertNotNull(loaded.author);
+        assertFalse(loaded.author.isLoaded());
+        assertEquals(author.getId(), loaded.author.getId());
+        assertNull(Cache.getEntity(MockModel.class, author.getId()));
+
+        MockModel related = loaded.author.get();
+        assertNotNull(related);
+        assertEquals(42, related.intField);
+        assertTrue(loaded.author.isLoaded());
+        assertSame(related, loaded.author.get());
+    }
+
+    /**
+     * Rows without a relation should load a null field.
+     */
+    public void testNull() {
+        LazyModel empty = new LazyModel();
+        empty.save();
+        Cache.clear();
+
+        LazyModel loaded = new Select().from(LazyModel.class).where("Id = ?", empty.getId()).executeSingle();
+        assertNull(loaded.author);
+    }
+
+    @Table(name = "LazyModel")
+    public static class LazyModel extends Model {
+        @Column
+        public Lazy<MockModel> author;
+    }
+}
@@ -0,0 +1,140 @@
+package com.activeandroid.test;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+
+import java.util.Arrays;
+import java.util.Date;
+
+public class ModelBinderTest extends ActiveAndroidTestCase {
+
+    /**
+     * Models with accessible columns should get a generated binder.
+     */
+    public void testBinderGenerated() {
+        assertNotNull(Cache.getTableInfo(MockModel.class).getBinder());
+        assertNotNull(Cache.getTableInfo(BinderMockModel.class).getBinder());
+    }
+
+    /**
+     * Models with private columns can't be bound from generated code and fall back to reflection.
+     */
+    public void testPrivateColumnFallsBack() {
+        assertNull(Cache.getTableInfo(PrivateMockModel.class).getBinder());
+
+        PrivateMockModel model = new PrivateMockModel();
+        model.setValue("private");
+        model.save();
+
+        Cache.clear();
+        PrivateMockModel loaded = Model.load(PrivateMockModel.class, model.getId());
+        assertNotSame(model, loaded);
+        assertEquals("private", loaded.getValue());
+    }
+
+    /**
+     * Every supported column type should survive a round trip through the generated binder.
+     */
+    public void testRoundTrip() {
+        MockModel related = new MockModel();
+        related.intField = 42;
+        related.save();
+
+        BinderMockModel model = new BinderMockModel();
+        model.byteField = 1;
+        model.shortField = 2;
+        model.integerField = 3;
+        model.longField = 4L;
+        model.floatField = 5.5f;
+        model.doubleField = 6.5;
+        model.booleanField = true;
+        model.charField = 'c';
+        model.stringField = "string";
+        model.blobField = new byte[] { 1, 2, 3 };
+        model.enumField = MockEnum.TWO;
+        model.dateField = new Date(1000L);
+        model.modelField = related;
+        model.save();
+
+        Cache.clear();
+        BinderMockModel loaded = Model.load(BinderMockModel.class, model.getId());
+        assertNotSame(model, loaded);
+        assertEquals(model.getId(), loaded.getId());
+        assertEquals(1, loaded.byteField);
+        assertEquals(2, loaded.shortField);
+        assertEquals(Integer.valueOf(3), loaded.integerField);
+        assertEquals(Long.valueOf(4L), loaded.longField);
+        assertEquals(5.5f, loaded.floatField, 0f);
+        assertEquals(6.5, loaded.doubleField, 0);
+        assertEquals(Boolean.TRUE, loaded.booleanField);
+        assertEquals('c', loaded.charField);
+        assertEquals("string", loaded.stringField);
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, loaded.blobField));
+        assertEquals(MockEnum.TWO, loaded.enumField);
+        assertEquals(new Date(1000L), loaded.dateField);
+        assertEquals(related.getId(), loaded.modelField.getId());
+        assertEquals(42, loaded.modelField.intField);
+    }
+
+    public enum MockEnum {
+        ONE, TWO
+    }
+
+    @Table(name = "BinderMockModel")
+    public static class BinderMockModel extends Model {
+        @Column
+        public byte byteField;
+
+        @Column
+        public short shortField;
+
+        @Column
+        public Integer integerField;
+
+        @Column
+        public Long longField;
+
+        @Column
+        public float floatField;
+
+        @Column
+        public double doubleField;
+
+        @Column
+        public Boolean booleanField;
+
+        @Column
+        public char charField;
+
+        @Column
+        public String stringField;
+
+        @Column
+        public byte[] blobField;
+
+        @Column
+        public MockEnum enumField;
+
+        @Column
+        public Date dateField;
+
+        @Column
+        public MockModel modelField;
+    }
+
+    @Table(name = "PrivateMockModel")
+    public static class PrivateMockModel extends Model {
+        @Column
+        private String value;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.activeandroid.test;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.ModelRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ModelRegistryTest extends ActiveAndroidTestCase {
+
+    private static List<Class<? extends Model>> loadModels() {
+        List<Class<? extends Model>> models = new ArrayList<Class<? extends Model>>();
+        for (ModelRegistry registry : ModelRegistry.loadAll(ModelRegistryTest.class.getClassLoader())) {
+            models.addAll(registry.getModelClasses());
+        }
+
+        return models;
+    }
+
+    /**
+     * The processor should list every model, including those generated code can't name.
+     */
+    public void testRegistryGenerated() throws Exception {
+        List<Class<? extends Model>> models = loadModels();
+
+        assertTrue(models.contains(MockModel.class));
+        assertTrue(models.contains(Class.forName(ConfigurationTest.class.getName() + "$ConfigurationTestModel")));
+        assertFalse(models.contains(Model.class));
+    }
+
+    /**
+     * Registries are named per module, so that those of libraries don't clash with the app's.
+     */
+    public void testRegistryDiscovered() {
+        List<ModelRegistry> registries = ModelRegistry.loadAll(ModelRegistryTest.class.getClassLoader());
+
+        assertFalse(registries.isEmpty());
+        for (ModelRegistry registry : registries) {
+            assertTrue(registry.getClass().getSimpleName().startsWith("ModelRegistry$$"));
+        }
+    }
+
+    /**
+     * Every registered model should have been loaded without scanning the APK.
+     */
+    public void testModelsLoaded() throws Exception {
+        for (Class<? extends Model> model : loadModels()) {
+            assertNotNull(Cache.getTableInfo(model));
+        }
+    }
+}
@@ -16,15 +16,19 @@
 
 package com.activeandroid.test;
 
+import com.activeandroid.ActiveAndroid;
 import com.activeandroid.Cache;
 import com.activeandroid.Model;
 import com.activeandroid.TableInfo;
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
+import com.activeandroid.content.ContentProvider;
 import com.activeandroid.query.Select;
+import com.activeandroid.util.SQLiteUtils;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -229,12 +233,203 @@ public class ModelTest extends ActiveAndroidTestCase {
 
     }
 
+    /**
+     * The column plan should map duplicate names to their first occurrence
+     * and be reused for cursors with the same columns.
+     */
+    public void testColumnIndexesPlan() {
+        TableInfo tableInfo = Cache.getTableInfo(MockModel.class);
+        String[] columnNames = new String[] { "Id", "intField", "Id", "intField", "dateField" };
+
+        int[] columnIndexes = tableInfo.getColumnIndexes(columnNames);
+        assertEquals(tableInfo.getColumns().length, columnIndexes.length);
+        for (int i = 0; i < columnIndexes.length; i++) {
+            String name = tableInfo.getColumns()[i].getName();
+            assertEquals(Arrays.asList(columnNames).indexOf(name), columnIndexes[i]);
+        }
+
+        assertSame(columnIndexes, tableInfo.getColumnIndexes(columnNames.clone()));
+    }
+
+    /**
+     * Saving in bulk should insert new models, update saved ones and assign ids.
+     */
+    public void testSaveAll() {
+        MockModel existing = new MockModel();
+        existing.intField = 1;
+        existing.save();
+        existing.intField = 2;
+
+        List<Model> models = new ArrayList<Model>();
+        models.add(existing);
+        for (int i = 0; i < 3; i++) {
+            MockModel model = new MockModel();
+            model.intField = 10 + i;
+            model.dateField = new Date(i);
+            models.add(model);
+        }
+        AnotherMockModel another = new AnotherMockModel();
+        models.add(another);
+
+        ActiveAndroid.saveAll(models);
+
+        Cache.clear();
+        assertEquals(2, Model.load(MockModel.class, existing.getId()).intField);
+        for (int i = 1; i <= 3; i++) {
+            MockModel model = (MockModel) models.get(i);
+            assertNotNull(model.getId());
+            MockModel loaded = Model.load(MockModel.class, model.getId());
+            assertEquals(model.intField, loaded.intField);
+            assertEquals(model.dateField, loaded.dateField);
+        }
+        assertNotNull(another.getId());
+        assertNotNull(Model.load(AnotherMockModel.class, another.getId()));
+    }
+
+    /**
+     * Updates should only write the columns that changed since the model was loaded or saved.
+     */
+    public void testSaveWritesChangedColumns() {
+        MockModel model = new MockModel();
+        model.intField = 1;
+        model.doubleField = 1;
+        model.save();
+
+        // Changed behind the model's back, so a full-row update would overwrite it.
+        SQLiteUtils.execSql("UPDATE MockModel SET intField = 99 WHERE Id = ?", new Object[] { model.getId() });
+
+        model.doubleField = 2;
+        model.save();
+
+        String[] id = new String[] { model.getId().toString() };
+        assertEquals(99, SQLiteUtils.intQuery("SELECT intField FROM MockModel WHERE Id = ?", id));
+        assertEquals(2, SQLiteUtils.intQuery("SELECT doubleField FROM MockModel WHERE Id = ?", id));
+
+        // Same for a model that was loaded rather than saved.
+        Cache.clear();
+        MockModel loaded = Model.load(MockModel.class, model.getId());
+        SQLiteUtils.execSql("UPDATE MockModel SET doubleField = 5 WHERE Id = ?", new Object[] { model.getId() });
+        loaded.intField = 3;
+        loaded.save();
+
+        assertEquals(3, SQLiteUtils.intQuery("SELECT intField FROM MockModel WHERE Id = ?", id));
+        assertEquals(5, SQLiteUtils.intQuery("SELECT doubleField FROM MockModel WHERE Id = ?", id));
+    }
+
+    /**
+     * Saving a model that didn't change shouldn't write anything.
+     */
+    public void testSaveUnchanged() {
+        MockModel model = new MockModel();
+        model.intField = 1;
+        model.save();
+
+        SQLiteUtils.execSql("UPDATE MockModel SET intField = 99 WHERE Id = ?", new Object[] { model.getId() });
+        assertNothingWritten(model);
+
+        assertEquals(99, SQLiteUtils.intQuery("SELECT intField FROM MockModel WHERE Id = ?",
+                new String[] { model.getId().toString() }));
+    }
+
+    /**
+     * Saving a loaded model that didn't change shouldn't write anything either.
+     */
+    public void testSaveUnchangedLoaded() {
+        MockModel model = new MockModel();
+        model.intField = 1;
+        model.dateField = new Date(123456789L);
+        model.save();
+
+        Cache.clear();
+        assertNothingWritten(Model.load(MockModel.class, model.getId()));
+    }
+
+    private void assertNothingWritten(Model model) {
+        ChangeNotificationTest.CountingObserver observer = new ChangeNotificationTest.CountingObserver();
+        Cache.getContext().getContentResolver()
+                .registerContentObserver(ContentProvider.createUri(model.getClass(), null), true, observer);
+        try {
+            int changes = SQLiteUtils.intQuery("SELECT total_changes()", null);
+            model.save();
+            ActiveAndroid.saveAll(Arrays.asList(model));
+
+            assertEquals(changes, SQLiteUtils.intQuery("SELECT total_changes()", null));
+            assertEquals(0, observer.awaitCount(0));
+        }
+        finally {
+            Cache.getContext().getContentResolver().unregisterContentObserver(observer);
+        }
+    }
+
+    /**
+     * Blobs modified in place should still be written.
+     */
+    public void testSaveBlobModifiedInPlace() {
+        BlobMockModel model = new BlobMockModel();
+        model.data = new byte[] { 1, 2, 3 };
+        model.save();
+
+        model.data[1] = 42;
+        model.save();
+
+        Cache.clear();
+        BlobMockModel loaded = Model.load(BlobMockModel.class, model.getId());
+        assertTrue(Arrays.equals(new byte[] { 1, 42, 3 }, loaded.data));
+    }
+
+    /**
+     * Text replaced by a different value of the same length should be written.
+     */
+    public void testSaveTextOfSameLength() {
+        TextMockModel model = new TextMockModel();
+        model.text = "ab";
+        model.save();
+
+        model.text = "ba";
+        model.save();
+
+        Cache.clear();
+        assertEquals("ba", Model.load(TextMockModel.class, model.getId()).text);
+    }
+
+    /**
+     * A blob replaced by a copy shouldn't be written, one replaced by other bytes of the same
+     * length should.
+     */
+    public void testSaveBlobReplaced() {
+        BlobMockModel model = new BlobMockModel();
+        model.data = new byte[] { 1, 2, 3 };
+        model.save();
+
+        model.data = new byte[] { 1, 2, 3 };
+        assertNothingWritten(model);
+
+        model.data = new byte[] { 3, 2, 1 };
+        model.save();
+
+        Cache.clear();
+        BlobMockModel loaded = Model.load(BlobMockModel.class, model.getId());
+        assertTrue(Arrays.equals(new byte[] { 3, 2, 1 }, loaded.data));
+    }
+
 	/**
 	 * Mock model as we need 2 different model classes.
 	 */
 	@Table(name = "AnotherMockTable")
 	public static class AnotherMockModel extends Model {}
 
+    @Table(name = "BlobMockModel")
+    public static class BlobMockModel extends Model {
+        @Column
+        public byte[] data;
+    }
+
+    @Table(name = "TextMockModel")
+    public static class TextMockModel extends Model {
+        @Column
+        public String text;
+    }
+
     /**
      * Mock model to test joins with same names.
      * It's a copy from MockModel.
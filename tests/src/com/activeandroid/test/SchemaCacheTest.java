@@ -0,0 +1,62 @@
+package com.activeandroid.test;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.ColumnInfo;
+import com.activeandroid.Configuration;
+import com.activeandroid.TableInfo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+public class SchemaCacheTest extends ActiveAndroidTestCase {
+
+    private File getSchemaFile() {
+        String databaseName = new Configuration.Builder(getContext()).create().getDatabaseName();
+        return new File(getContext().getCacheDir(), "ActiveAndroid-" + databaseName + ".schema");
+    }
+
+    /**
+     * Tables restored from the cache should match those resolved by reflection.
+     */
+    public void testWarmStart() throws InterruptedException {
+        File file = getSchemaFile();
+        file.delete();
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+        TableInfo resolved = Cache.getTableInfo(MockModel.class);
+
+        for (int i = 0; i < 50 && !file.exists(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(file.exists());
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+        TableInfo restored = Cache.getTableInfo(MockModel.class);
+
+        assertEquals(resolved.getTableName(), restored.getTableName());
+        assertEquals(resolved.getIdName(), restored.getIdName());
+        assertEquals(resolved.getColumns().length, restored.getColumns().length);
+        for (int i = 0; i < resolved.getColumns().length; i++) {
+            ColumnInfo column = resolved.getColumns()[i];
+            assertEquals(column.getName(), restored.getColumns()[i].getName());
+            assertEquals(column.getField(), restored.getColumns()[i].getField());
+        }
+    }
+
+    /**
+     * A corrupt file should be ignored rather than break initialization.
+     */
+    public void testCorruptFile() throws Exception {
+        FileOutputStream output = new FileOutputStream(getSchemaFile());
+        output.write(new byte[] { 1, 2, 3 });
+        output.close();
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        assertNotNull(Cache.getTableInfo(MockModel.class));
+    }
+}
@@ -0,0 +1,72 @@
+package com.activeandroid.test;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.Cache;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.query.Update;
+import com.activeandroid.util.StatementCache;
+
+public class StatementCacheTest extends ActiveAndroidTestCase {
+
+    /**
+     * Running the same count twice should reuse the compiled statement.
+     */
+    public void testCountReusesStatement() {
+        new Delete().from(MockModel.class).execute();
+        new MockModel().save();
+
+        StatementCache statements = Cache.getStatementCache();
+        assertEquals(1, new Select().from(MockModel.class).where("intField = ?", 0).count());
+        int hits = statements.getHitCount();
+        int misses = statements.getMissCount();
+
+        assertEquals(0, new Select().from(MockModel.class).where("intField = ?", 1).count());
+        assertEquals(hits + 1, statements.getHitCount());
+        assertEquals(misses, statements.getMissCount());
+    }
+
+    /**
+     * Updates and deletes should run through cached statements.
+     */
+    public void testUpdateAndDelete() {
+        new Delete().from(MockModel.class).execute();
+        MockModel model = new MockModel();
+        model.save();
+
+        new Update(MockModel.class).set("intField = ?", 5).where("Id = ?", model.getId()).execute();
+        assertTrue(new Select().from(MockModel.class).where("intField = ?", 5).exists());
+
+        new Delete().from(MockModel.class).where("intField = ?", 5).execute();
+        assertFalse(new Select().from(MockModel.class).exists());
+    }
+
+    /**
+     * The cache should stay within its size and keep statements checked out by another caller.
+     */
+    public void testBounded() {
+        SQLiteDatabase db = Cache.openDatabase();
+        StatementCache statements = new StatementCache(2);
+
+        for (int i = 0; i < 4; i++) {
+            String sql = "SELECT " + i;
+            statements.release(db, sql, statements.acquire(db, sql));
+        }
+        assertEquals(2, statements.size());
+        assertEquals(4, statements.getMissCount());
+
+        SQLiteStatement first = statements.acquire(db, "SELECT 3");
+        SQLiteStatement second = statements.acquire(db, "SELECT 3");
+        assertNotSame(first, second);
+        assertEquals(1, statements.getHitCount());
+        assertEquals(3, first.simpleQueryForLong());
+        assertEquals(3, second.simpleQueryForLong());
+
+        statements.release(db, "SELECT 3", first);
+        statements.release(db, "SELECT 3", second);
+        statements.clear();
+        assertEquals(0, statements.size());
+    }
+}
@@ -0,0 +1,187 @@
+package com.activeandroid.test;
+
+import android.database.sqlite.SQLiteDatabaseLockedException;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.util.concurrent.Callable;
+
+public class TransactionTest extends ActiveAndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        new Delete().from(TransactionModel.class).execute();
+    }
+
+    private static int count() {
+        return new Select().from(TransactionModel.class).count();
+    }
+
+    private static Callable<Long> insert(final int number) {
+        return new Callable<Long>() {
+            @Override
+            public Long call() {
+                TransactionModel model = new TransactionModel();
+                model.number = number;
+                return model.save();
+            }
+        };
+    }
+
+    /**
+     * Should commit and return the result of the block.
+     */
+    public void testCommit() {
+        Long id = ActiveAndroid.runInTransaction(insert(1));
+
+        assertNotNull(id);
+        assertFalse(ActiveAndroid.inTransaction());
+        assertEquals(1, count());
+    }
+
+    /**
+     * Should roll back and rethrow when the block throws.
+     */
+    public void testRollback() {
+        try {
+            ActiveAndroid.runInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    insert(1).call();
+                    throw new Exception("Failed.");
+                }
+            });
+            fail("Expected a RuntimeException.");
+        }
+        catch (RuntimeException e) {
+            assertEquals("Failed.", e.getCause().getMessage());
+        }
+
+        assertFalse(ActiveAndroid.inTransaction());
+        assertEquals(0, count());
+    }
+
+    /**
+     * A nested block that throws should only undo its own changes.
+     */
+    public void testNestedRollback() {
+        ActiveAndroid.runInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                insert(1).call();
+
+                try {
+                    ActiveAndroid.runInTransaction(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            insert(2).call();
+                            throw new IllegalStateException();
+                        }
+                    });
+                    fail("Expected an IllegalStateException.");
+                }
+                catch (IllegalStateException e) {
+                    // Expected.
+                }
+
+                ActiveAndroid.runInTransaction(insert(3));
+                return null;
+            }
+        });
+
+        assertEquals(2, count());
+        assertEquals(0, new Select().from(TransactionModel.class).where("number = ?", 2).count());
+    }
+
+    /**
+     * A failing inner block should leave an outer transaction open, usable and committable.
+     */
+    public void testNestedRollbackKeepsOuterTransaction() throws Exception {
+        ActiveAndroid.beginTransaction();
+        try {
+            insert(1).call();
+
+            try {
+                ActiveAndroid.runInTransaction(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        insert(2).call();
+                        throw new IllegalStateException();
+                    }
+                });
+                fail("Expected an IllegalStateException.");
+            }
+            catch (IllegalStateException e) {
+                // Expected.
+            }
+
+            assertTrue(ActiveAndroid.inTransaction());
+            assertEquals(1, count());
+
+            insert(3).call();
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        assertFalse(ActiveAndroid.inTransaction());
+        assertEquals(2, count());
+        assertEquals(0, new Select().from(TransactionModel.class).where("number = ?", 2).count());
+    }
+
+    /**
+     * Should run the block again when the database is locked.
+     */
+    public void testRetryWhenLocked() {
+        final int[] attempts = new int[1];
+        ActiveAndroid.runInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                insert(attempts[0]).call();
+                if (++attempts[0] < 3) {
+                    throw new SQLiteDatabaseLockedException();
+                }
+                return null;
+            }
+        }, 2);
+
+        assertEquals(3, attempts[0]);
+        assertEquals(1, count());
+    }
+
+    /**
+     * Should give up once the retries are used up.
+     */
+    public void testRetriesExhausted() {
+        final int[] attempts = new int[1];
+        try {
+            ActiveAndroid.runInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    attempts[0]++;
+                    throw new SQLiteDatabaseLockedException();
+                }
+            }, 1);
+            fail("Expected an SQLiteDatabaseLockedException.");
+        }
+        catch (SQLiteDatabaseLockedException e) {
+            // Expected.
+        }
+
+        assertEquals(2, attempts[0]);
+    }
+
+    @Table(name = "TransactionModel")
+    public static class TransactionModel extends Model {
+        @Column
+        public int number;
+    }
+}
@@ -0,0 +1,256 @@
+package com.activeandroid.test;
+
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Configuration;
+import com.activeandroid.Model;
+import com.activeandroid.WriteQueue;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.query.Update;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WriteQueueTest extends ActiveAndroidTestCase {
+    private static final int THREADS = 8;
+    private static final int SAVES_PER_THREAD = 50;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(new Configuration.Builder(getContext())
+                .setWriteAheadLoggingEnabled(true)
+                .setWriteQueueEnabled(true)
+                .create());
+
+        new Delete().from(WriteQueueModel.class).execute();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ActiveAndroid.dispose();
+        ActiveAndroid.initialize(getContext());
+
+        super.tearDown();
+    }
+
+    /**
+     * Saves from many threads should all be committed before they return.
+     */
+    public void testConcurrentSaves() throws InterruptedException {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < SAVES_PER_THREAD; j++) {
+                            WriteQueueModel model = new WriteQueueModel();
+                            model.number = thread * SAVES_PER_THREAD + j;
+                            assertNotNull(model.save());
+                            assertTrue(model.getId() > 0);
+                        }
+                    }
+                    catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(THREADS * SAVES_PER_THREAD, new Select().from(WriteQueueModel.class).count());
+    }
+
+    /**
+     * A failing write should throw on the calling thread and leave the queue working.
+     */
+    public void testFailedWrite() {
+        try {
+            new Update(WriteQueueModel.class).set("missing = 1").execute();
+            fail("Expected an SQLiteException.");
+        }
+        catch (SQLiteException e) {
+            // Expected.
+        }
+
+        WriteQueueModel model = new WriteQueueModel();
+        model.save();
+        model.delete();
+        assertEquals(0, new Select().from(WriteQueueModel.class).count());
+    }
+
+    /**
+     * A failing write committed in a group with others should only undo itself.
+     */
+    public void testFailedWriteInGroup() throws Exception {
+        final AtomicReference<Throwable> goodError = new AtomicReference<Throwable>();
+        final AtomicReference<Throwable> failedError = new AtomicReference<Throwable>();
+        Runnable save = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    assertNotNull(new WriteQueueModel().save());
+                }
+                catch (Throwable e) {
+                    goodError.set(e);
+                }
+            }
+        };
+        Runnable fail = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new Update(WriteQueueModel.class).set("missing = 1").execute();
+                }
+                catch (Throwable e) {
+                    failedError.set(e);
+                }
+            }
+        };
+
+        runInGroup(save, fail, save);
+
+        assertNull(goodError.get());
+        assertTrue(failedError.get() instanceof SQLiteException);
+        assertEquals(2, new Select().from(WriteQueueModel.class).count());
+        assertFalse(ActiveAndroid.inTransaction());
+    }
+
+    /**
+     * A nested transaction that isn't successful rolls back the whole group. Every write in it
+     * should fail, and the models it saved should be new again rather than keep ids of rows that
+     * don't exist.
+     */
+    public void testFailedGroup() throws Exception {
+        final WriteQueueModel[] models = { new WriteQueueModel(), new WriteQueueModel() };
+        final AtomicReference<Throwable> saveError = new AtomicReference<Throwable>();
+        final AtomicReference<Throwable> failedError = new AtomicReference<Throwable>();
+        Runnable[] writes = new Runnable[3];
+        for (int i = 0; i < models.length; i++) {
+            final WriteQueueModel model = models[i];
+            writes[i * 2] = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        model.save();
+                    }
+                    catch (Throwable e) {
+                        saveError.set(e);
+                    }
+                }
+            };
+        }
+        writes[1] = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    WriteQueue.run(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            ActiveAndroid.beginTransaction();
+                            ActiveAndroid.endTransaction();
+                            return null;
+                        }
+                    });
+                }
+                catch (Throwable e) {
+                    failedError.set(e);
+                }
+            }
+        };
+
+        runInGroup(writes);
+
+        assertTrue(saveError.get() instanceof SQLiteException);
+        assertTrue(failedError.get() instanceof SQLiteException);
+        assertEquals(0, new Select().from(WriteQueueModel.class).count());
+        for (WriteQueueModel model : models) {
+            assertNull(model.getId());
+        }
+        assertFalse(ActiveAndroid.inTransaction());
+
+        // Saving again inserts the rows that were rolled back.
+        for (WriteQueueModel model : models) {
+            assertNotNull(model.save());
+        }
+        assertEquals(2, new Select().from(WriteQueueModel.class).count());
+    }
+
+    /**
+     * Writes inside a transaction must be part of it, so they can't go through the queue.
+     */
+    public void testWriteInTransaction() {
+        ActiveAndroid.beginTransaction();
+        try {
+            new WriteQueueModel().save();
+            assertEquals(1, new Select().from(WriteQueueModel.class).count());
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        assertEquals(0, new Select().from(WriteQueueModel.class).count());
+    }
+
+    /**
+     * Keeps the writer busy while <code>writes</code> start, one after another, so that they queue
+     * up and are committed as one group.
+     */
+    private void runInGroup(Runnable... writes) throws InterruptedException {
+        final CountDownLatch writerHeld = new CountDownLatch(1);
+        final CountDownLatch releaseWriter = new CountDownLatch(1);
+
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WriteQueue.run(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        writerHeld.countDown();
+                        releaseWriter.await();
+                        return null;
+                    }
+                });
+            }
+        });
+        holder.start();
+        assertTrue(writerHeld.await(5, TimeUnit.SECONDS));
+
+        Thread[] writers = new Thread[writes.length];
+        for (int i = 0; i < writes.length; i++) {
+            writers[i] = new Thread(writes[i]);
+            writers[i].start();
+            SystemClock.sleep(50);
+        }
+        SystemClock.sleep(200);
+        releaseWriter.countDown();
+
+        holder.join();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+
+    @Table(name = "WriteQueueModel")
+    public static class WriteQueueModel extends Model {
+        @Column
+        public int number;
+    }
+}
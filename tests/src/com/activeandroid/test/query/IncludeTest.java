@@ -0,0 +1,146 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+
+import java.util.List;
+
+public class IncludeTest extends SqlableTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        new Delete().from(LineItemModel.class).execute();
+        new Delete().from(OrderModel.class).execute();
+    }
+
+    private void populateTables() {
+        for (int i = 0; i < 4; i++) {
+            OrderModel order = new OrderModel();
+            order.number = i;
+            order.save();
+
+            // The last order has no items.
+            for (int j = 0; j < 3 - i; j++) {
+                LineItemModel item = new LineItemModel();
+                item.parent = order;
+                item.quantity = j;
+                item.save();
+            }
+        }
+
+        Cache.clear();
+    }
+
+    /**
+     * getMany should answer from the prefetched children without running another query.
+     */
+    public void testInclude() {
+        populateTables();
+
+        List<OrderModel> orders = new Select().from(OrderModel.class)
+                .orderBy("number")
+                .include(LineItemModel.class, "Parent")
+                .execute();
+        assertEquals(4, orders.size());
+
+        // Prefetched children don't see changes made behind ActiveAndroid's back, which shows no
+        // query is run.
+        deleteItemsDirectly();
+
+        for (int i = 0; i < orders.size(); i++) {
+            List<LineItemModel> items = orders.get(i).items();
+            assertEquals(3 - i, items.size());
+            for (int j = 0; j < items.size(); j++) {
+                assertSame(orders.get(i), items.get(j).parent);
+                assertEquals(j, items.get(j).quantity);
+            }
+        }
+    }
+
+    /**
+     * Loading the parent again without the include should drop the prefetched children.
+     */
+    public void testReloadClearsPrefetched() {
+        populateTables();
+
+        OrderModel order = new Select().from(OrderModel.class)
+                .where("number = ?", 0)
+                .include(LineItemModel.class, "Parent")
+                .executeSingle();
+        assertEquals(3, order.items().size());
+
+        deleteItemsDirectly();
+        OrderModel reloaded = new Select().from(OrderModel.class).where("number = ?", 0).executeSingle();
+        assertSame(order, reloaded);
+        assertEquals(0, reloaded.items().size());
+    }
+
+    /**
+     * Saving or deleting a child should drop the prefetched children of parents still cached.
+     */
+    public void testWriteClearsPrefetched() {
+        populateTables();
+
+        OrderModel order = new Select().from(OrderModel.class)
+                .where("number = ?", 0)
+                .include(LineItemModel.class, "Parent")
+                .executeSingle();
+        assertEquals(3, order.items().size());
+
+        LineItemModel item = new LineItemModel();
+        item.parent = order;
+        item.quantity = 3;
+        item.save();
+
+        List<LineItemModel> items = order.items();
+        assertEquals(4, items.size());
+        assertTrue(items.contains(item));
+
+        item.delete();
+        assertEquals(3, order.items().size());
+    }
+
+    /**
+     * Should reject columns that aren't relations.
+     */
+    public void testInvalidForeignKey() {
+        populateTables();
+
+        try {
+            new Select().from(OrderModel.class).include(LineItemModel.class, "quantity").execute();
+            fail("Expected an IllegalArgumentException.");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private static void deleteItemsDirectly() {
+        Cache.openDatabase().execSQL("DELETE FROM LineItemModel");
+    }
+
+    @Table(name = "OrderModel")
+    public static class OrderModel extends Model {
+        @Column
+        public int number;
+
+        public List<LineItemModel> items() {
+            return getMany(LineItemModel.class, "Parent");
+        }
+    }
+
+    @Table(name = "LineItemModel")
+    public static class LineItemModel extends Model {
+        @Column(name = "Parent")
+        public OrderModel parent;
+
+        @Column
+        public int quantity;
+    }
+}
@@ -0,0 +1,89 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.Cache;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.ModelIterator;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class ModelIteratorTest extends SqlableTestCase {
+
+    private void populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        for (int i = 1; i <= 3; i++) {
+            MockModel model = new MockModel();
+            model.intField = i;
+            // Only the second row has a date, to check that nothing leaks into a reused instance.
+            model.dateField = i == 2 ? new Date(1000L) : null;
+            model.save();
+        }
+    }
+
+    /**
+     * Should return the same models as execute() in the same order.
+     */
+    public void testIteratesAllRows() {
+        populateTable();
+
+        List<MockModel> expected = new Select().from(MockModel.class).orderBy("intField").execute();
+        List<MockModel> actual = new ArrayList<MockModel>();
+        ModelIterator<MockModel> iterator = new Select().from(MockModel.class).orderBy("intField").executeIterator();
+        for (MockModel model : iterator) {
+            actual.add(model);
+        }
+
+        assertEquals(expected, actual);
+        assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Should load every row into the same instance and keep it out of the cache.
+     */
+    public void testReuseInstance() {
+        populateTable();
+        Cache.clear();
+
+        ModelIterator<MockModel> iterator = new Select().from(MockModel.class).orderBy("intField").executeIterator(true);
+        MockModel first = iterator.next();
+        assertEquals(1, first.intField);
+        assertNull(first.dateField);
+        assertNull(Cache.getEntity(MockModel.class, first.getId()));
+
+        MockModel second = iterator.next();
+        assertSame(first, second);
+        assertEquals(2, second.intField);
+        assertEquals(new Date(1000L), second.dateField);
+
+        MockModel third = iterator.next();
+        assertSame(first, third);
+        assertEquals(3, third.intField);
+        assertNull(third.dateField);
+
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("Expected NoSuchElementException");
+        }
+        catch (NoSuchElementException e) {
+        }
+    }
+
+    /**
+     * Should be safe to close before reaching the end.
+     */
+    public void testCloseEarly() {
+        populateTable();
+
+        ModelIterator<MockModel> iterator = new Select().from(MockModel.class).executeIterator();
+        assertNotNull(iterator.next());
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        iterator.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Pager;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PagerTest extends SqlableTestCase {
+
+    private static final int ROWS = 25;
+
+    private void populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        for (int i = 0; i < ROWS; i++) {
+            MockModel model = new MockModel();
+            // Repeat values so pages have to break ties on the id.
+            model.intField = i % 4;
+            model.booleanField = i % 2 == 0;
+            model.save();
+        }
+    }
+
+    /**
+     * Paging on the id should return every row once, in id order.
+     */
+    public void testPagesOnId() {
+        populateTable();
+
+        List<MockModel> expected = new Select().from(MockModel.class).orderBy("Id").execute();
+        Pager<MockModel> pager = new Select().from(MockModel.class).pager(10);
+
+        List<Integer> sizes = new ArrayList<Integer>();
+        List<MockModel> actual = new ArrayList<MockModel>();
+        for (List<MockModel> page : pager) {
+            sizes.add(page.size());
+            actual.addAll(page);
+        }
+
+        assertEquals(expected, actual);
+        assertEquals("[10, 10, 5]", sizes.toString());
+        assertFalse(pager.hasNextPage());
+        assertTrue(pager.nextPage().isEmpty());
+    }
+
+    /**
+     * Paging on a column with duplicate values should neither skip nor repeat rows.
+     */
+    public void testPagesOnColumnDescending() {
+        populateTable();
+
+        List<MockModel> expected = new Select().from(MockModel.class)
+                .where("booleanField = ?", true)
+                .orderBy("intField DESC, Id DESC")
+                .execute();
+        Pager<MockModel> pager = new Select().from(MockModel.class)
+                .where("booleanField = ?", true)
+                .pager("intField", false, 3);
+
+        List<MockModel> actual = new ArrayList<MockModel>();
+        while (pager.hasNextPage()) {
+            actual.addAll(pager.nextPage());
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * An exact multiple of the page size shouldn't produce an empty last page.
+     */
+    public void testExactLastPage() {
+        populateTable();
+
+        Pager<MockModel> pager = new Select().from(MockModel.class).pager(5);
+        int pages = 0;
+        for (List<MockModel> page : pager) {
+            assertEquals(5, page.size());
+            pages++;
+        }
+
+        assertEquals(ROWS / 5, pages);
+
+        pager.reset();
+        assertTrue(pager.hasNextPage());
+        assertEquals(5, pager.nextPage().size());
+    }
+
+    /**
+     * Keys that only differ past the digits SQLite prints as text should still page exactly.
+     */
+    public void testPagesOnDoubleColumn() {
+        new Delete().from(MockModel.class).execute();
+
+        double value = 1.0;
+        for (int i = 0; i < 10; i++) {
+            MockModel model = new MockModel();
+            model.doubleField = value;
+            model.save();
+            value = Math.nextUp(value);
+        }
+
+        List<MockModel> expected = new Select().from(MockModel.class).orderBy("doubleField ASC, Id ASC").execute();
+        Pager<MockModel> pager = new Select().from(MockModel.class).pager("doubleField", true, 3);
+
+        List<MockModel> actual = new ArrayList<MockModel>();
+        for (List<MockModel> page : pager) {
+            actual.addAll(page);
+        }
+
+        assertEquals(expected, actual);
+    }
+}
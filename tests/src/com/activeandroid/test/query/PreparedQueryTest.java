@@ -0,0 +1,119 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.PreparedQuery;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PreparedQueryTest extends SqlableTestCase {
+
+    // Compiled once the test application has initialized ActiveAndroid.
+    private static PreparedQuery<MockModel> BY_INT_AND_BOOLEAN;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        if (BY_INT_AND_BOOLEAN == null) {
+            BY_INT_AND_BOOLEAN = new Select()
+                    .from(MockModel.class)
+                    .where("intField = ?")
+                    .and("booleanField = ?")
+                    .orderBy("Id")
+                    .compile();
+        }
+    }
+
+    private void populateTable() {
+        new Delete().from(MockModel.class).execute();
+
+        for (int i = 0; i < 6; i++) {
+            MockModel model = new MockModel();
+            model.intField = i % 3;
+            model.booleanField = i < 3;
+            model.save();
+        }
+    }
+
+    /**
+     * Should keep the SQL of the query it was compiled from.
+     */
+    public void testSql() {
+        assertEquals("SELECT * FROM MockModel WHERE intField = ? AND booleanField = ? ORDER BY Id",
+                BY_INT_AND_BOOLEAN.toSql());
+    }
+
+    /**
+     * Should return the same results as the equivalent query built each time.
+     */
+    public void testExecute() {
+        populateTable();
+
+        List<MockModel> expected = new Select().from(MockModel.class)
+                .where("intField = ?", 1)
+                .and("booleanField = ?", true)
+                .orderBy("Id")
+                .execute();
+
+        assertEquals(expected, BY_INT_AND_BOOLEAN.execute(1, true));
+        assertEquals(expected.get(0), BY_INT_AND_BOOLEAN.executeSingle(1, true));
+        assertEquals(1, BY_INT_AND_BOOLEAN.count(1, true));
+        assertTrue(BY_INT_AND_BOOLEAN.exists(2, false));
+        assertFalse(BY_INT_AND_BOOLEAN.exists(3, false));
+    }
+
+    /**
+     * Arguments given while building come before those given to each call.
+     */
+    public void testBuildArguments() {
+        populateTable();
+
+        PreparedQuery<MockModel> query = new Select().from(MockModel.class)
+                .where("booleanField = ?", true)
+                .and("intField > ?")
+                .compile();
+
+        assertEquals(2, query.count(0));
+        assertEquals(0, query.count(2));
+    }
+
+    /**
+     * A single prepared query should be usable from several threads.
+     */
+    public void testSharedBetweenThreads() throws Exception {
+        populateTable();
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int value = i % 3;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            assertEquals(1, BY_INT_AND_BOOLEAN.execute(value, true).size());
+                            assertEquals(1, BY_INT_AND_BOOLEAN.count(value, false));
+                        }
+                    }
+                    catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+package com.activeandroid.test.query;
+
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.activeandroid.query.Delete;
+import com.activeandroid.query.Select;
+import com.activeandroid.test.MockModel;
+
+import java.util.List;
+
+public class RelationBatchTest extends SqlableTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Other tests delete the mock models these rows refer to.
+        new Delete().from(CommentModel.class).execute();
+
+        super.tearDown();
+    }
+
+    private void populateTables(int authors, int comments) {
+        new Delete().from(CommentModel.class).execute();
+        new Delete().from(MockModel.class).execute();
+
+        ActiveAndroid.beginTransaction();
+        try {
+            MockModel[] models = new MockModel[authors];
+            for (int i = 0; i < authors; i++) {
+                models[i] = new MockModel();
+                models[i].intField = i;
+                models[i].save();
+            }
+
+            for (int i = 0; i < comments; i++) {
+                CommentModel comment = new CommentModel();
+                comment.author = models[i % authors];
+                comment.save();
+            }
+
+            ActiveAndroid.setTransactionSuccessful();
+        }
+        finally {
+            ActiveAndroid.endTransaction();
+        }
+
+        Cache.clear();
+    }
+
+    /**
+     * Should link every row to the same instance of its related model.
+     */
+    public void testBatchRelations() {
+        populateTables(5, 20);
+
+        List<CommentModel> comments = new Select().from(CommentModel.class).orderBy("Id").batchRelations().execute();
+        assertEquals(20, comments.size());
+
+        for (int i = 0; i < comments.size(); i++) {
+            MockModel author = comments.get(i).author;
+            assertNotNull(author);
+            assertEquals(i % 5, author.intField);
+            assertSame(comments.get(i % 5).author, author);
+        }
+    }
+
+    /**
+     * Should load more related rows than fit in one IN clause, even when the cache can't hold
+     * them all.
+     */
+    public void testMoreRelationsThanVariables() {
+        populateTables(1100, 1100);
+
+        List<CommentModel> comments = new Select().from(CommentModel.class).orderBy("Id").batchRelations().execute();
+        assertEquals(1100, comments.size());
+
+        for (int i = 0; i < comments.size(); i++) {
+            assertNotNull(comments.get(i).author);
+            assertEquals(i, comments.get(i).author.intField);
+        }
+    }
+
+    /**
+     * Rows without a relation should load like they do without batching.
+     */
+    public void testMissingRelations() {
+        populateTables(2, 2);
+
+        CommentModel orphan = new CommentModel();
+        orphan.save();
+        Cache.clear();
+
+        CommentModel loaded = new Select().from(CommentModel.class)
+                .where("Id = ?", orphan.getId())
+                .batchRelations()
+                .executeSingle();
+        assertNotNull(loaded);
+        assertNull(loaded.author);
+    }
+
+    @Table(name = "CommentModel")
+    public static class CommentModel extends Model {
+        @Column
+        public MockModel author;
+    }
+}